@@ -34,23 +34,34 @@
 
 package gurux.common;
 
+import java.util.concurrent.atomic.AtomicInteger;
+
 /**
  * Auto reset event is used to wait until there is new data received from the
  * media.
+ * <p>
+ * Event is reset automatically when one waiting thread is released. State of
+ * the event is kept in an atomic state word and waiting threads are parked,
+ * so waiting doesn't pin virtual threads.
+ * </p>
  * 
  * @author Gurux Ltd.
  *
  */
-public class AutoResetEvent {
+public class AutoResetEvent extends WaitHandle {
+    /**
+     * Event is not set.
+     */
+    private static final int CLOSED = 0;
     /**
-     * Monitor is used for synchronize class.
+     * Event is set.
      */
-    private final Object monitor = new Object();
+    private static final int OPEN = 1;
 
     /**
-     * Is new data received.
+     * State of the event.
      */
-    private volatile boolean isOpen = false;
+    private final AtomicInteger state = new AtomicInteger(CLOSED);
 
     /**
      * Constructor.
@@ -59,70 +70,38 @@ public class AutoResetEvent {
      *             Is current state set.
      */
     public AutoResetEvent(final boolean open) {
-        isOpen = open;
+        if (open) {
+            state.set(OPEN);
+        }
     }
 
-    /**
-     * Wait until event occurs.
-     * 
-     * @return True when event occurs or false if event is closed.
-     */
-    public final boolean waitOne() {
-        synchronized (monitor) {
-            while (!isOpen) {
-                try {
-                    monitor.wait();
-                } catch (InterruptedException ex) {
-                    return false;
-                }
-            }
-            isOpen = false;
-            return true;
-        }
+    @Override
+    public final boolean isSet() {
+        return state.get() == OPEN;
     }
 
-    /**
-     * Wait until event occurs.
-     * 
-     * @param timeout
-     *                Wait time in mill seconds.
-     * @return True when event occurs or false if event is closed.
-     */
-    public final boolean waitOne(final long timeout) {
-        synchronized (monitor) {
-            boolean ret = true;
-            long t = System.currentTimeMillis();
-            while (!isOpen) {
-                try {
-                    monitor.wait(timeout);
-                } catch (InterruptedException ex) {
-                    return false;
-                }
-                // Check for timeout
-                if (System.currentTimeMillis() - t >= timeout) {
-                    ret = false;
-                    break;
-                }
-            }
-            isOpen = false;
-            return ret;
-        }
+    @Override
+    final boolean tryAcquire() {
+        return state.get() == OPEN && state.compareAndSet(OPEN, CLOSED);
+    }
+
+    @Override
+    final void undoAcquire() {
+        set();
     }
 
     /**
-     * Set synchronized object value.
+     * Set synchronized object value. One waiting thread is released.
      */
     public final void set() {
-        synchronized (monitor) {
-            isOpen = true;
-            monitor.notify();
-        }
+        state.set(OPEN);
+        wakeUp(false);
     }
 
     /**
      * Reset synchronized object value.
      */
     public final void reset() {
-        isOpen = false;
+        state.set(CLOSED);
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,154 @@
+//
+// --------------------------------------------------------------------------
+//  Gurux Ltd
+// 
+//
+//
+// Filename:        $HeadURL$
+//
+// Version:         $Revision$,
+//                  $Date$
+//                  $Author$
+//
+// Copyright (c) Gurux Ltd
+//
+//---------------------------------------------------------------------------
+//
+//  DESCRIPTION
+//
+// This file is a part of Gurux Device Framework.
+//
+// Gurux Device Framework is Open Source software; you can redistribute it
+// and/or modify it under the terms of the GNU General Public License 
+// as published by the Free Software Foundation; version 2 of the License.
+// Gurux Device Framework is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of 
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. 
+// See the GNU General Public License for more details.
+//
+// More information of Gurux products: http://www.gurux.org
+//
+// This code is licensed under the GNU General Public License v2. 
+// Full text may be retrieved at http://www.gnu.org/licenses/gpl-2.0.txt
+//---------------------------------------------------------------------------
+
+package gurux.common;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Countdown event is set when it has been signaled the given amount of
+ * times. All waiting threads are released when count reaches zero.
+ * 
+ * @author Gurux Ltd.
+ */
+public class CountdownEvent extends WaitHandle {
+    /**
+     * Remaining count.
+     */
+    private final AtomicInteger count = new AtomicInteger();
+
+    /**
+     * Constructor.
+     * 
+     * @param value
+     *              Amount of signals that are needed to set the event.
+     */
+    public CountdownEvent(final int value) {
+        reset(value);
+    }
+
+    @Override
+    public final boolean isSet() {
+        return count.get() == 0;
+    }
+
+    @Override
+    final boolean tryAcquire() {
+        return count.get() == 0;
+    }
+
+    @Override
+    final void undoAcquire() {
+        // Event is not changed when it's taken.
+    }
+
+    /**
+     * Get remaining count.
+     * 
+     * @return Amount of signals that are needed to set the event.
+     */
+    public final int getCurrentCount() {
+        return count.get();
+    }
+
+    /**
+     * Signal event once.
+     * 
+     * @return True, if event was set.
+     */
+    public final boolean signal() {
+        return signal(1);
+    }
+
+    /**
+     * Signal event.
+     * 
+     * @param value
+     *              Amount of signals.
+     * @return True, if event was set.
+     */
+    public final boolean signal(final int value) {
+        if (value < 1) {
+            throw new IllegalArgumentException("Invalid signal count.");
+        }
+        int current, next;
+        do {
+            current = count.get();
+            if (current < value) {
+                throw new IllegalStateException("Event is signaled too many times.");
+            }
+            next = current - value;
+        } while (!count.compareAndSet(current, next));
+        if (next == 0) {
+            wakeUp(true);
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Increase remaining count.
+     * 
+     * @param value
+     *              Amount of added signals.
+     */
+    public final void addCount(final int value) {
+        if (value < 1) {
+            throw new IllegalArgumentException("Invalid signal count.");
+        }
+        int current;
+        do {
+            current = count.get();
+            if (current == 0) {
+                throw new IllegalStateException("Event is already set.");
+            }
+        } while (!count.compareAndSet(current, current + value));
+    }
+
+    /**
+     * Reset remaining count.
+     * 
+     * @param value
+     *              Amount of signals that are needed to set the event.
+     */
+    public final void reset(final int value) {
+        if (value < 0) {
+            throw new IllegalArgumentException("Invalid signal count.");
+        }
+        count.set(value);
+        if (value == 0) {
+            wakeUp(true);
+        }
+    }
+}
@@ -0,0 +1,308 @@
+//
+// --------------------------------------------------------------------------
+//  Gurux Ltd
+//
+//
+//
+// Filename:        $HeadURL$
+//
+// Version:         $Revision$,
+//                  $Date$
+//                  $Author$
+//
+// Copyright (c) Gurux Ltd
+//
+//---------------------------------------------------------------------------
+//
+//  DESCRIPTION
+//
+// This file is a part of Gurux Device Framework.
+//
+// Gurux Device Framework is Open Source software; you can redistribute it
+// and/or modify it under the terms of the GNU General Public License
+// as published by the Free Software Foundation; version 2 of the License.
+// Gurux Device Framework is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+// See the GNU General Public License for more details.
+//
+// More information of Gurux products: http://www.gurux.org
+//
+// This code is licensed under the GNU General Public License v2.
+// Full text may be retrieved at http://www.gnu.org/licenses/gpl-2.0.txt
+//---------------------------------------------------------------------------
+
+package gurux.common;
+
+import java.util.ArrayDeque;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Pool of receive buffers that can be shared by media components. Buffers
+ * are divided to size classes that are powers of two. Media component
+ * returns its buffer to the pool when all received data is read, so idle
+ * connections don't hold receive buffers.
+ * <p>
+ * Buffers that are not used between two trims are released to the garbage
+ * collector. Trim is run automatically after idle time while the pool holds
+ * buffers.
+ * </p>
+ *
+ * @author Gurux Ltd.
+ */
+public final class GXBufferPool {
+    /**
+     * Size of the smallest size class.
+     */
+    private static final int MIN_SIZE = 64;
+    /**
+     * Amount of size classes. Biggest pooled buffer is 1 MB.
+     */
+    private static final int CLASS_COUNT = 15;
+    /**
+     * Default maximum amount of bytes that pool holds.
+     */
+    private static final long DEFAULT_MAX_RETAINED = 64L * 1024 * 1024;
+    /**
+     * Default idle time in milliseconds.
+     */
+    private static final int DEFAULT_IDLE_TIME = 30000;
+
+    /**
+     * Shared buffer pool.
+     */
+    private static GXBufferPool shared;
+
+    /**
+     * Lock that protects the pool.
+     */
+    private final ReentrantLock lock = new ReentrantLock();
+    /**
+     * Free buffers of each size class.
+     */
+    private final ArrayDeque<byte[]>[] free;
+    /**
+     * Smallest amount of free buffers in each size class after last trim.
+     * These buffers have not been used.
+     */
+    private final int[] unused;
+    /**
+     * Maximum amount of bytes that pool holds.
+     */
+    private final long maxRetained;
+    /**
+     * Idle time in milliseconds.
+     */
+    private final int idleTime;
+    /**
+     * Amount of bytes that pool holds.
+     */
+    private long retained;
+    /**
+     * Is trim scheduled.
+     */
+    private boolean trimScheduled;
+
+    /**
+     * Constructor.
+     */
+    public GXBufferPool() {
+        this(DEFAULT_MAX_RETAINED, DEFAULT_IDLE_TIME);
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param maxRetainedBytes
+     *            Maximum amount of bytes that pool holds.
+     * @param idleTimeMs
+     *            Time in milliseconds after unused buffers are released.
+     *            Zero if buffers are released only when trim is called.
+     */
+    @SuppressWarnings({ "unchecked", "rawtypes" })
+    public GXBufferPool(final long maxRetainedBytes, final int idleTimeMs) {
+        if (maxRetainedBytes < 0) {
+            throw new IllegalArgumentException("Invalid retained size.");
+        }
+        if (idleTimeMs < 0) {
+            throw new IllegalArgumentException("Invalid idle time.");
+        }
+        maxRetained = maxRetainedBytes;
+        idleTime = idleTimeMs;
+        free = new ArrayDeque[CLASS_COUNT];
+        for (int pos = 0; pos != CLASS_COUNT; ++pos) {
+            free[pos] = new ArrayDeque<byte[]>();
+        }
+        unused = new int[CLASS_COUNT];
+    }
+
+    /**
+     * Get shared buffer pool.
+     *
+     * @return Buffer pool.
+     */
+    public static GXBufferPool getShared() {
+        synchronized (GXBufferPool.class) {
+            if (shared == null) {
+                shared = new GXBufferPool();
+            }
+            return shared;
+        }
+    }
+
+    /**
+     * Get size class of the buffer.
+     *
+     * @param size
+     *            Buffer size.
+     * @return Size class index.
+     */
+    private static int getSizeClass(final int size) {
+        if (size <= MIN_SIZE) {
+            return 0;
+        }
+        return 32 - Integer.numberOfLeadingZeros(size - 1)
+                - Integer.numberOfTrailingZeros(MIN_SIZE);
+    }
+
+    /**
+     * Get buffer from the pool. New buffer is allocated if there are no free
+     * buffers.
+     *
+     * @param size
+     *            Minimum size of the buffer.
+     * @return Buffer that is at least the given size.
+     */
+    public byte[] acquire(final int size) {
+        if (size < 0) {
+            throw new IllegalArgumentException("Invalid buffer size.");
+        }
+        int index = getSizeClass(size);
+        if (index >= CLASS_COUNT) {
+            // Big buffers are not pooled.
+            return new byte[size];
+        }
+        lock.lock();
+        try {
+            byte[] buff = free[index].pollLast();
+            if (buff != null) {
+                retained -= buff.length;
+                if (unused[index] > free[index].size()) {
+                    unused[index] = free[index].size();
+                }
+                return buff;
+            }
+        } finally {
+            lock.unlock();
+        }
+        return new byte[MIN_SIZE << index];
+    }
+
+    /**
+     * Return buffer to the pool. Buffer can't be used after it's returned.
+     *
+     * @param buffer
+     *            Returned buffer.
+     */
+    public void release(final byte[] buffer) {
+        int size = buffer.length;
+        // Only buffers that are allocated by the pool are kept.
+        if (size < MIN_SIZE || (size & (size - 1)) != 0) {
+            return;
+        }
+        int index = getSizeClass(size);
+        if (index >= CLASS_COUNT) {
+            return;
+        }
+        boolean schedule = false;
+        lock.lock();
+        try {
+            if (retained + size > maxRetained) {
+                return;
+            }
+            free[index].addLast(buffer);
+            retained += size;
+            if (idleTime != 0 && !trimScheduled) {
+                trimScheduled = true;
+                schedule = true;
+            }
+        } finally {
+            lock.unlock();
+        }
+        if (schedule) {
+            scheduleTrim();
+        }
+    }
+
+    /**
+     * Schedule automatic trim.
+     */
+    private void scheduleTrim() {
+        GXTimeoutWheel.getInstance().schedule(new Runnable() {
+            @Override
+            public void run() {
+                trim();
+                boolean again;
+                lock.lock();
+                try {
+                    again = retained != 0;
+                    trimScheduled = again;
+                } finally {
+                    lock.unlock();
+                }
+                if (again) {
+                    scheduleTrim();
+                }
+            }
+        }, idleTime);
+    }
+
+    /**
+     * Release buffers that are not used after last trim.
+     */
+    public void trim() {
+        lock.lock();
+        try {
+            for (int pos = 0; pos != CLASS_COUNT; ++pos) {
+                ArrayDeque<byte[]> list = free[pos];
+                // Least recently returned buffers are released.
+                for (int count = unused[pos]; count != 0; --count) {
+                    retained -= list.pollFirst().length;
+                }
+                unused[pos] = list.size();
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Release all free buffers.
+     */
+    public void clear() {
+        lock.lock();
+        try {
+            for (int pos = 0; pos != CLASS_COUNT; ++pos) {
+                free[pos].clear();
+                unused[pos] = 0;
+            }
+            retained = 0;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Get amount of bytes that pool holds.
+     *
+     * @return Amount of bytes in free buffers.
+     */
+    public long getRetainedBytes() {
+        lock.lock();
+        try {
+            return retained;
+        } finally {
+            lock.unlock();
+        }
+    }
+}
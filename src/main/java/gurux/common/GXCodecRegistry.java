@@ -0,0 +1,480 @@
+//
+// --------------------------------------------------------------------------
+//  Gurux Ltd
+//
+//
+//
+// Filename:        $HeadURL$
+//
+// Version:         $Revision$,
+//                  $Date$
+//                  $Author$
+//
+// Copyright (c) Gurux Ltd
+//
+//---------------------------------------------------------------------------
+//
+//  DESCRIPTION
+//
+// This file is a part of Gurux Device Framework.
+//
+// Gurux Device Framework is Open Source software; you can redistribute it
+// and/or modify it under the terms of the GNU General Public License
+// as published by the Free Software Foundation; version 2 of the License.
+// Gurux Device Framework is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+// See the GNU General Public License for more details.
+//
+// More information of Gurux products: http://www.gurux.org
+//
+// This code is licensed under the GNU General Public License v2.
+// Full text may be retrieved at http://www.gnu.org/licenses/gpl-2.0.txt
+//---------------------------------------------------------------------------
+
+package gurux.common;
+
+import java.lang.reflect.Type;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Registry of the reply decoders and data encoders. Decoders for byte array,
+ * Byte, Character, Short, Integer, Long and String are registered by default.
+ * Encoders are registered for the same types, ByteBuffer, CharSequence, Float
+ * and Double. User can register decoders and encoders for own types.
+ * <p>
+ * Numbers are decoded and encoded in big-endian byte order. Character is
+ * encoded as the low byte of the character. Strings are encoded as ASCII and
+ * characters that are not ASCII are encoded as '?'.
+ * </p>
+ *
+ * @author Gurux Ltd.
+ */
+public final class GXCodecRegistry {
+    /**
+     * Biggest ASCII character.
+     */
+    private static final int MAX_ASCII = 0x7F;
+
+    /**
+     * Registered reply decoders.
+     */
+    private static final ConcurrentHashMap<Type, IGXReplyDecoder<?>> DECODERS =
+            new ConcurrentHashMap<Type, IGXReplyDecoder<?>>();
+    /**
+     * Registered encoders.
+     */
+    private static final ConcurrentHashMap<Class<?>, IGXEncoder<?>> ENCODERS =
+            new ConcurrentHashMap<Class<?>, IGXEncoder<?>>();
+    /**
+     * Encoders of the data types that are resolved from the registered super
+     * types.
+     */
+    private static final ConcurrentHashMap<Class<?>, IGXEncoder<?>> RESOLVED =
+            new ConcurrentHashMap<Class<?>, IGXEncoder<?>>();
+
+    static {
+        DECODERS.put(byte[].class, new IGXReplyDecoder<byte[]>() {
+            @Override
+            public int getSize() {
+                return 0;
+            }
+
+            @Override
+            public byte[] decode(final ByteBuffer data) {
+                byte[] value = new byte[data.remaining()];
+                data.get(value);
+                return value;
+            }
+        });
+        DECODERS.put(Byte.class, new IGXReplyDecoder<Byte>() {
+            @Override
+            public int getSize() {
+                return 1;
+            }
+
+            @Override
+            public Byte decode(final ByteBuffer data) {
+                return data.get(data.position());
+            }
+        });
+        DECODERS.put(Character.class, new IGXReplyDecoder<Character>() {
+            @Override
+            public int getSize() {
+                return 1;
+            }
+
+            @Override
+            public Character decode(final ByteBuffer data) {
+                return (char) data.get(data.position());
+            }
+        });
+        DECODERS.put(Short.class, new IGXReplyDecoder<Short>() {
+            @Override
+            public int getSize() {
+                return GXCommon.SHORT_BYTES;
+            }
+
+            @Override
+            public Short decode(final ByteBuffer data) {
+                return data.getShort(data.position());
+            }
+        });
+        DECODERS.put(Integer.class, new IGXReplyDecoder<Integer>() {
+            @Override
+            public int getSize() {
+                return GXCommon.INTEGER_BYTES;
+            }
+
+            @Override
+            public Integer decode(final ByteBuffer data) {
+                return data.getInt(data.position());
+            }
+        });
+        DECODERS.put(Long.class, new IGXReplyDecoder<Long>() {
+            @Override
+            public int getSize() {
+                return GXCommon.LONG_BYTES;
+            }
+
+            @Override
+            public Long decode(final ByteBuffer data) {
+                return data.getLong(data.position());
+            }
+        });
+        DECODERS.put(String.class, new IGXReplyDecoder<String>() {
+            @Override
+            public int getSize() {
+                return 0;
+            }
+
+            @Override
+            public String decode(final ByteBuffer data) {
+                return Charset.defaultCharset().decode(data).toString();
+            }
+        });
+        ENCODERS.put(byte[].class, new IGXEncoder<byte[]>() {
+            @Override
+            public int getSize(final byte[] value) {
+                return value.length;
+            }
+
+            @Override
+            public void encode(final byte[] value, final ByteBuffer target) {
+                target.put(value);
+            }
+        });
+        ENCODERS.put(ByteBuffer.class, new IGXEncoder<ByteBuffer>() {
+            @Override
+            public int getSize(final ByteBuffer value) {
+                return value.remaining();
+            }
+
+            @Override
+            public void encode(final ByteBuffer value, final ByteBuffer target) {
+                // Position of the encoded buffer is not moved.
+                int pos = value.position();
+                target.put(value);
+                value.position(pos);
+            }
+        });
+        ENCODERS.put(CharSequence.class, new IGXEncoder<CharSequence>() {
+            @Override
+            public int getSize(final CharSequence value) {
+                return value.length();
+            }
+
+            @Override
+            public void encode(final CharSequence value, final ByteBuffer target) {
+                char ch;
+                for (int pos = 0; pos != value.length(); ++pos) {
+                    ch = value.charAt(pos);
+                    if (ch > MAX_ASCII) {
+                        ch = '?';
+                    }
+                    target.put((byte) ch);
+                }
+            }
+        });
+        ENCODERS.put(Byte.class, new IGXEncoder<Byte>() {
+            @Override
+            public int getSize(final Byte value) {
+                return 1;
+            }
+
+            @Override
+            public void encode(final Byte value, final ByteBuffer target) {
+                target.put(value.byteValue());
+            }
+        });
+        ENCODERS.put(Character.class, new IGXEncoder<Character>() {
+            @Override
+            public int getSize(final Character value) {
+                return 1;
+            }
+
+            @Override
+            public void encode(final Character value, final ByteBuffer target) {
+                target.put((byte) value.charValue());
+            }
+        });
+        ENCODERS.put(Short.class, new IGXEncoder<Short>() {
+            @Override
+            public int getSize(final Short value) {
+                return GXCommon.SHORT_BYTES;
+            }
+
+            @Override
+            public void encode(final Short value, final ByteBuffer target) {
+                target.putShort(value.shortValue());
+            }
+        });
+        ENCODERS.put(Integer.class, new IGXEncoder<Integer>() {
+            @Override
+            public int getSize(final Integer value) {
+                return GXCommon.INTEGER_BYTES;
+            }
+
+            @Override
+            public void encode(final Integer value, final ByteBuffer target) {
+                target.putInt(value.intValue());
+            }
+        });
+        ENCODERS.put(Long.class, new IGXEncoder<Long>() {
+            @Override
+            public int getSize(final Long value) {
+                return GXCommon.LONG_BYTES;
+            }
+
+            @Override
+            public void encode(final Long value, final ByteBuffer target) {
+                target.putLong(value.longValue());
+            }
+        });
+        ENCODERS.put(Float.class, new IGXEncoder<Float>() {
+            @Override
+            public int getSize(final Float value) {
+                return GXCommon.INTEGER_BYTES;
+            }
+
+            @Override
+            public void encode(final Float value, final ByteBuffer target) {
+                target.putFloat(value.floatValue());
+            }
+        });
+        ENCODERS.put(Double.class, new IGXEncoder<Double>() {
+            @Override
+            public int getSize(final Double value) {
+                return GXCommon.LONG_BYTES;
+            }
+
+            @Override
+            public void encode(final Double value, final ByteBuffer target) {
+                target.putDouble(value.doubleValue());
+            }
+        });
+    }
+
+    /**
+     * This is utility class and user can't create it.
+     */
+    private GXCodecRegistry() {
+
+    }
+
+    /**
+     * Register reply decoder. Old decoder of the reply type is replaced.
+     *
+     * @param <T>
+     *            Reply type.
+     * @param type
+     *            Reply type.
+     * @param decoder
+     *            Reply decoder.
+     */
+    public static <T> void registerDecoder(final Class<T> type, final IGXReplyDecoder<? extends T> decoder) {
+        registerDecoder((Type) type, decoder);
+    }
+
+    /**
+     * Register reply decoder for the generic reply type. Old decoder of the
+     * reply type is replaced.
+     *
+     * @param type
+     *            Reply type.
+     * @param decoder
+     *            Reply decoder.
+     */
+    public static void registerDecoder(final Type type, final IGXReplyDecoder<?> decoder) {
+        if (type == null) {
+            throw new IllegalArgumentException("Invalid reply type.");
+        }
+        if (decoder == null) {
+            throw new IllegalArgumentException("Invalid decoder.");
+        }
+        DECODERS.put(type, decoder);
+    }
+
+    /**
+     * Remove reply decoder.
+     *
+     * @param type
+     *            Reply type.
+     */
+    public static void unregisterDecoder(final Type type) {
+        DECODERS.remove(type);
+    }
+
+    /**
+     * Get reply decoder.
+     *
+     * @param type
+     *            Reply type.
+     * @return Reply decoder.
+     */
+    public static IGXReplyDecoder<?> getDecoder(final Type type) {
+        IGXReplyDecoder<?> decoder = DECODERS.get(type);
+        if (decoder == null) {
+            throw new RuntimeException("Invalid object type.");
+        }
+        return decoder;
+    }
+
+    /**
+     * Register encoder. Encoder is used also for the sub types of the data
+     * type if they don't have an own encoder. Old encoder of the data type is
+     * replaced.
+     *
+     * @param <T>
+     *            Data type.
+     * @param type
+     *            Data type.
+     * @param encoder
+     *            Encoder.
+     */
+    public static <T> void registerEncoder(final Class<T> type, final IGXEncoder<? super T> encoder) {
+        if (type == null) {
+            throw new IllegalArgumentException("Invalid data type.");
+        }
+        if (encoder == null) {
+            throw new IllegalArgumentException("Invalid encoder.");
+        }
+        ENCODERS.put(type, encoder);
+        RESOLVED.clear();
+    }
+
+    /**
+     * Remove encoder.
+     *
+     * @param type
+     *            Data type.
+     */
+    public static void unregisterEncoder(final Class<?> type) {
+        ENCODERS.remove(type);
+        RESOLVED.clear();
+    }
+
+    /**
+     * Get encoder of the data type. If the data type doesn't have an own
+     * encoder, encoder of the nearest super class or interface is used.
+     *
+     * @param type
+     *            Data type.
+     * @return Encoder.
+     */
+    public static IGXEncoder<?> getEncoder(final Class<?> type) {
+        IGXEncoder<?> encoder = ENCODERS.get(type);
+        if (encoder == null) {
+            encoder = RESOLVED.get(type);
+            if (encoder == null) {
+                encoder = findEncoder(type);
+                if (encoder == null) {
+                    throw new RuntimeException("Unknown data type " + type.getName());
+                }
+                RESOLVED.put(type, encoder);
+            }
+        }
+        return encoder;
+    }
+
+    /**
+     * Find encoder from the super classes and interfaces of the data type.
+     *
+     * @param type
+     *            Data type.
+     * @return Encoder or null if encoder is not found.
+     */
+    private static IGXEncoder<?> findEncoder(final Class<?> type) {
+        IGXEncoder<?> encoder;
+        for (Class<?> it = type; it != null; it = it.getSuperclass()) {
+            encoder = ENCODERS.get(it);
+            if (encoder != null) {
+                return encoder;
+            }
+            for (Class<?> i : it.getInterfaces()) {
+                encoder = findEncoder(i);
+                if (encoder != null) {
+                    return encoder;
+                }
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Get amount of bytes the value takes when it's encoded.
+     *
+     * @param value
+     *            Encoded value.
+     * @return Size of the encoded value in bytes.
+     */
+    @SuppressWarnings("unchecked")
+    public static int getSize(final Object value) {
+        if (value == null) {
+            return 0;
+        }
+        return ((IGXEncoder<Object>) getEncoder(value.getClass())).getSize(value);
+    }
+
+    /**
+     * Encode value to the buffer. Bytes are written starting from the
+     * position of the buffer and position is moved after the written bytes.
+     *
+     * @param value
+     *            Encoded value.
+     * @param target
+     *            Output buffer.
+     * @return Amount of written bytes.
+     */
+    @SuppressWarnings("unchecked")
+    public static int encode(final Object value, final ByteBuffer target) {
+        if (value == null) {
+            return 0;
+        }
+        int pos = target.position();
+        ((IGXEncoder<Object>) getEncoder(value.getClass())).encode(value, target);
+        return target.position() - pos;
+    }
+
+    /**
+     * Encode value to the buffer that is taken from the buffer pool. Returned
+     * buffer is ready to be read. Backing array must be returned to the pool
+     * after the data is sent.
+     *
+     * @param value
+     *            Encoded value.
+     * @param pool
+     *            Buffer pool.
+     * @return Encoded bytes.
+     * @see GXBufferPool#release(byte[])
+     */
+    public static ByteBuffer encode(final Object value, final GXBufferPool pool) {
+        int size = getSize(value);
+        ByteBuffer target = ByteBuffer.wrap(pool.acquire(size), 0, size);
+        encode(value, target);
+        target.flip();
+        return target;
+    }
+}
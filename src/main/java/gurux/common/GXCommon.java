@@ -77,7 +77,7 @@ public final class GXCommon {
     /**
      * Amount of bytes in long.
      */
-    static final int LONG_BYTES = 4;
+    static final int LONG_BYTES = 8;
 
     /**
      * Low part of the byte.
@@ -0,0 +1,392 @@
+//
+// --------------------------------------------------------------------------
+//  Gurux Ltd
+//
+//
+//
+// Filename:        $HeadURL$
+//
+// Version:         $Revision$,
+//                  $Date$
+//                  $Author$
+//
+// Copyright (c) Gurux Ltd
+//
+//---------------------------------------------------------------------------
+//
+//  DESCRIPTION
+//
+// This file is a part of Gurux Device Framework.
+//
+// Gurux Device Framework is Open Source software; you can redistribute it
+// and/or modify it under the terms of the GNU General Public License
+// as published by the Free Software Foundation; version 2 of the License.
+// Gurux Device Framework is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+// See the GNU General Public License for more details.
+//
+// More information of Gurux products: http://www.gurux.org
+//
+// This code is licensed under the GNU General Public License v2.
+// Full text may be retrieved at http://www.gnu.org/licenses/gpl-2.0.txt
+//---------------------------------------------------------------------------
+
+package gurux.common;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Correlator routes received frames to the waiters that are registered for
+ * the correlation key of the frame. Many requests can be waiting for the
+ * reply at the same time on one media, for example when devices on a
+ * multi-drop bus are addressed or replies have an invoke ID.
+ * <p>
+ * Frames are read from the media when new data is appended. Frame is found
+ * using end of packet or count of the receive parameters, or the frame
+ * decoder of the media. Synchronous and asynchronous receive are not used
+ * while correlator is attached to the media.
+ * </p>
+ * <p>
+ * Waiter must be registered before the request is sent, so the reply is not
+ * lost. Waiters of the same key are completed in registration order.
+ * </p>
+ *
+ * @author Gurux Ltd.
+ * @see IGXKeyExtractor
+ */
+public final class GXCorrelator implements AutoCloseable {
+    /**
+     * Media where frames are read.
+     */
+    private final GXSynchronousMediaBase media;
+    /**
+     * Receive parameters that tell how the frame is found.
+     */
+    private final ReceiveParameters<byte[]> args;
+    /**
+     * Key extractor.
+     */
+    private final IGXKeyExtractor extractor;
+    /**
+     * Lock that protects the waiters.
+     */
+    private final ReentrantLock lock = new ReentrantLock();
+    /**
+     * Waiters of each correlation key.
+     */
+    private final HashMap<Object, ArrayDeque<Waiter>> waiters = new HashMap<Object, ArrayDeque<Waiter>>();
+    /**
+     * Listener for the frames that don't have a waiter.
+     */
+    private volatile IGXFrameListener unsolicited;
+    /**
+     * Amount of frames that didn't have a waiter.
+     */
+    private volatile long unmatchedCount;
+    /**
+     * Is correlator closed.
+     */
+    private boolean closed;
+
+    /**
+     * Waiter of the reply.
+     */
+    private static final class Waiter {
+        /**
+         * Correlation key.
+         */
+        private final Object key;
+        /**
+         * Completed when the reply is received.
+         */
+        private final CompletableFuture<byte[]> future = new CompletableFuture<byte[]>();
+        /**
+         * Wait timeout or null if reply is waited forever.
+         */
+        private GXTimeout timeout;
+
+        /**
+         * Constructor.
+         *
+         * @param value
+         *            Correlation key.
+         */
+        Waiter(final Object value) {
+            key = value;
+        }
+    }
+
+    /**
+     * Received frames that are handled after the received data is unlocked.
+     */
+    private final class Router implements IGXFrameListener {
+        /**
+         * Waiters that have received their reply.
+         */
+        private final List<Waiter> matched = new ArrayList<Waiter>();
+        /**
+         * Replies of the matched waiters.
+         */
+        private final List<byte[]> replies = new ArrayList<byte[]>();
+        /**
+         * Frames that don't have a waiter.
+         */
+        private final List<byte[]> unmatched = new ArrayList<byte[]>();
+
+        @Override
+        public void onFrame(final ByteBuffer frame) {
+            Object key;
+            try {
+                key = extractor.getKey(frame.duplicate());
+            } catch (RuntimeException ex) {
+                // Frame that key can't be extracted is handled as unmatched.
+                key = null;
+            }
+            byte[] data = new byte[frame.remaining()];
+            frame.get(data);
+            Waiter it = null;
+            if (key != null) {
+                lock.lock();
+                try {
+                    ArrayDeque<Waiter> list = waiters.get(key);
+                    if (list != null) {
+                        it = list.poll();
+                        if (list.isEmpty()) {
+                            waiters.remove(key);
+                        }
+                    }
+                } finally {
+                    lock.unlock();
+                }
+            }
+            if (it == null) {
+                unmatched.add(data);
+            } else {
+                matched.add(it);
+                replies.add(data);
+            }
+        }
+    }
+
+    /**
+     * Constructor. Correlator is attached to the media. Media can't use
+     * lock-free mode.
+     *
+     * @param target
+     *            Media where frames are read.
+     * @param parameters
+     *            Receive parameters that tell how the frame is found. Wait
+     *            time is not used.
+     * @param keyExtractor
+     *            Key extractor.
+     */
+    public GXCorrelator(final GXSynchronousMediaBase target, final ReceiveParameters<byte[]> parameters,
+            final IGXKeyExtractor keyExtractor) {
+        if (target == null) {
+            throw new IllegalArgumentException("Invalid media.");
+        }
+        if (keyExtractor == null) {
+            throw new IllegalArgumentException("Invalid key extractor.");
+        }
+        if (target.getFrameDecoder() == null && parameters.getEop() == null && parameters.getCount() == 0) {
+            throw new IllegalArgumentException("Either Count or Eop must be set.");
+        }
+        if (parameters.getPeek()) {
+            throw new IllegalArgumentException("Peek can't be used with correlator.");
+        }
+        media = target;
+        args = parameters;
+        extractor = keyExtractor;
+        media.setCorrelator(this);
+        // Data might be already received.
+        dispatch();
+    }
+
+    /**
+     * Get listener for the frames that don't have a waiter.
+     *
+     * @return Listener or null if frames are dropped.
+     */
+    public IGXFrameListener getUnsolicitedListener() {
+        return unsolicited;
+    }
+
+    /**
+     * Set listener for the frames that don't have a waiter. Listener is
+     * called after received data is unlocked.
+     *
+     * @param value
+     *            Listener or null if frames are dropped.
+     */
+    public void setUnsolicitedListener(final IGXFrameListener value) {
+        unsolicited = value;
+    }
+
+    /**
+     * Get amount of frames that didn't have a waiter.
+     *
+     * @return Amount of unmatched frames.
+     */
+    public long getUnmatchedCount() {
+        return unmatchedCount;
+    }
+
+    /**
+     * Register waiter for the reply with the given correlation key.
+     *
+     * @param key
+     *            Correlation key.
+     * @param waitTime
+     *            Wait time in milliseconds. Reply is waited forever if wait
+     *            time is zero or negative.
+     * @return Future that is completed with the reply, or with
+     *         TimeoutException if wait time elapses.
+     */
+    public CompletableFuture<byte[]> register(final Object key, final int waitTime) {
+        if (key == null) {
+            throw new IllegalArgumentException("Invalid key.");
+        }
+        final Waiter it = new Waiter(key);
+        lock.lock();
+        try {
+            if (closed) {
+                throw new IllegalStateException("Correlator is closed.");
+            }
+            ArrayDeque<Waiter> list = waiters.get(key);
+            if (list == null) {
+                list = new ArrayDeque<Waiter>();
+                waiters.put(key, list);
+            }
+            list.add(it);
+            if (waitTime > 0) {
+                it.timeout = GXTimeoutWheel.getInstance().schedule(new Runnable() {
+                    @Override
+                    public void run() {
+                        timeout(it);
+                    }
+                }, waitTime);
+            }
+        } finally {
+            lock.unlock();
+        }
+        return it.future;
+    }
+
+    /**
+     * Get amount of registered waiters.
+     *
+     * @return Amount of waiters.
+     */
+    public int getWaiterCount() {
+        lock.lock();
+        try {
+            int count = 0;
+            for (ArrayDeque<Waiter> it : waiters.values()) {
+                count += it.size();
+            }
+            return count;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Remove waiter that has timed out.
+     *
+     * @param it
+     *            Timed out waiter.
+     */
+    private void timeout(final Waiter it) {
+        lock.lock();
+        try {
+            ArrayDeque<Waiter> list = waiters.get(it.key);
+            if (list == null || !list.remove(it)) {
+                // Reply is already received.
+                return;
+            }
+            if (list.isEmpty()) {
+                waiters.remove(it.key);
+            }
+        } finally {
+            lock.unlock();
+        }
+        it.future.completeExceptionally(new TimeoutException());
+    }
+
+    /**
+     * Read received frames and complete the waiters. This is called by the
+     * media when new data is appended.
+     */
+    void dispatch() {
+        Router router = new Router();
+        RuntimeException failure = null;
+        try {
+            media.readAvailable(args, null, router);
+        } catch (RuntimeException ex) {
+            // Frames that were read before the invalid frame are delivered.
+            failure = ex;
+        }
+        for (int pos = 0; pos != router.matched.size(); ++pos) {
+            Waiter it = router.matched.get(pos);
+            if (it.timeout != null) {
+                it.timeout.cancel();
+            }
+            it.future.complete(router.replies.get(pos));
+        }
+        if (!router.unmatched.isEmpty()) {
+            lock.lock();
+            try {
+                unmatchedCount += router.unmatched.size();
+            } finally {
+                lock.unlock();
+            }
+            IGXFrameListener listener = unsolicited;
+            if (listener != null) {
+                for (byte[] it : router.unmatched) {
+                    listener.onFrame(ByteBuffer.wrap(it).asReadOnlyBuffer());
+                }
+            }
+        }
+        if (failure != null) {
+            throw failure;
+        }
+    }
+
+    /**
+     * Detach correlator from the media. Waiting requests are completed with
+     * an exception.
+     */
+    @Override
+    public void close() {
+        List<Waiter> list = new ArrayList<Waiter>();
+        lock.lock();
+        try {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            for (ArrayDeque<Waiter> it : waiters.values()) {
+                list.addAll(it);
+            }
+            waiters.clear();
+        } finally {
+            lock.unlock();
+        }
+        media.setCorrelator(null);
+        IllegalStateException ex = new IllegalStateException("Correlator is closed.");
+        for (Waiter it : list) {
+            if (it.timeout != null) {
+                it.timeout.cancel();
+            }
+            it.future.completeExceptionally(ex);
+        }
+    }
+}
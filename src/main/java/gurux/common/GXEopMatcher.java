@@ -0,0 +1,251 @@
+//
+// --------------------------------------------------------------------------
+//  Gurux Ltd
+//
+//
+//
+// Filename:        $HeadURL$
+//
+// Version:         $Revision$,
+//                  $Date$
+//                  $Author$
+//
+// Copyright (c) Gurux Ltd
+//
+//---------------------------------------------------------------------------
+//
+//  DESCRIPTION
+//
+// This file is a part of Gurux Device Framework.
+//
+// Gurux Device Framework is Open Source software; you can redistribute it
+// and/or modify it under the terms of the GNU General Public License
+// as published by the Free Software Foundation; version 2 of the License.
+// Gurux Device Framework is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+// See the GNU General Public License for more details.
+//
+// More information of Gurux products: http://www.gurux.org
+//
+// This code is licensed under the GNU General Public License v2.
+// Full text may be retrieved at http://www.gnu.org/licenses/gpl-2.0.txt
+//---------------------------------------------------------------------------
+
+package gurux.common;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * Compiled end of packet matcher. Terminators are compiled only once to
+ * Aho-Corasick automaton, so all terminators are searched with one pass over
+ * the data and searching doesn't allocate memory. The earliest terminator in
+ * the data is found.
+ *
+ * @author Gurux Ltd.
+ */
+final class GXEopMatcher {
+    /**
+     * Amount of different byte values.
+     */
+    private static final int BYTE_VALUES = 256;
+
+    /**
+     * Amount of bits needed for the byte value.
+     */
+    private static final int BYTE_BITS = 8;
+
+    /**
+     * End of packet where matcher is compiled from.
+     */
+    private final Object eop;
+
+    /**
+     * State transitions. Next state is found from index (state &lt;&lt; 8) |
+     * byte value.
+     */
+    private final int[] transitions;
+
+    /**
+     * Is terminator found when the state is reached.
+     */
+    private final boolean[] matches;
+
+    /**
+     * Constructor.
+     *
+     * @param value
+     *            End of packet. Array of objects is handled as a list of
+     *            terminators.
+     */
+    GXEopMatcher(final Object value) {
+        eop = value;
+        byte[][] terminators;
+        if (value instanceof Object[]) {
+            Object[] arr = (Object[]) value;
+            terminators = new byte[arr.length][];
+            for (int pos = 0; pos != arr.length; ++pos) {
+                terminators[pos] = GXSynchronousMediaBase.getAsByteArray(arr[pos]);
+            }
+        } else {
+            terminators = new byte[][] { GXSynchronousMediaBase.getAsByteArray(value) };
+        }
+        if (terminators.length == 0) {
+            throw new IllegalArgumentException("Invalid end of packet.");
+        }
+        int count = 1;
+        for (byte[] it : terminators) {
+            if (it.length == 0) {
+                throw new IllegalArgumentException("Invalid end of packet.");
+            }
+            count += it.length;
+        }
+        int[] next = new int[count << BYTE_BITS];
+        boolean[] found = new boolean[count];
+        // Add terminators to the trie. Root is state zero.
+        count = 1;
+        int state, index;
+        for (byte[] it : terminators) {
+            state = 0;
+            for (byte b : it) {
+                index = (state << BYTE_BITS) | (b & 0xFF);
+                if (next[index] == 0) {
+                    next[index] = count;
+                    ++count;
+                }
+                state = next[index];
+            }
+            found[state] = true;
+        }
+        // Add failure transitions in breadth-first order.
+        int[] failure = new int[count];
+        int[] queue = new int[count];
+        int first = 0, last = 0;
+        for (int b = 0; b != BYTE_VALUES; ++b) {
+            if (next[b] != 0) {
+                queue[last] = next[b];
+                ++last;
+            }
+        }
+        int target;
+        while (first != last) {
+            state = queue[first];
+            ++first;
+            found[state] |= found[failure[state]];
+            for (int b = 0; b != BYTE_VALUES; ++b) {
+                index = (state << BYTE_BITS) | b;
+                target = next[(failure[state] << BYTE_BITS) | b];
+                if (next[index] == 0) {
+                    next[index] = target;
+                } else {
+                    failure[next[index]] = target;
+                    queue[last] = next[index];
+                    ++last;
+                }
+            }
+        }
+        transitions = new int[count << BYTE_BITS];
+        System.arraycopy(next, 0, transitions, 0, transitions.length);
+        matches = new boolean[count];
+        System.arraycopy(found, 0, matches, 0, count);
+    }
+
+    /**
+     * Check is matcher compiled from given end of packet.
+     *
+     * @param value
+     *            End of packet.
+     * @return True, if matcher can be used for given end of packet.
+     */
+    boolean isCompiledFrom(final Object value) {
+        if (value == eop) {
+            return true;
+        }
+        if (value == null || eop == null) {
+            return false;
+        }
+        if (value instanceof byte[] && eop instanceof byte[]) {
+            return Arrays.equals((byte[]) value, (byte[]) eop);
+        }
+        if (value instanceof Object[] && eop instanceof Object[]) {
+            return Arrays.deepEquals((Object[]) value, (Object[]) eop);
+        }
+        return value.equals(eop);
+    }
+
+    /**
+     * Find end of the packet from the circular buffer. Search can be continued
+     * when new data is received using the returned state.
+     *
+     * @param data
+     *            Circular buffer.
+     * @param offset
+     *            Position of the first byte in the circular buffer.
+     * @param index
+     *            Offset from the first byte where search is started.
+     * @param count
+     *            Offset from the first byte where search is ended.
+     * @param state
+     *            Search state. Zero when new search is started.
+     * @return Offset after the first found terminator or -1 if terminator is
+     *         not found.
+     */
+    int find(final byte[] data, final int offset, final int index, final int count, final int[] state) {
+        int current = state[0];
+        int pos = offset + index;
+        if (pos >= data.length) {
+            pos -= data.length;
+        }
+        for (int i = index; i < count; ++i) {
+            current = transitions[(current << BYTE_BITS) | (data[pos] & 0xFF)];
+            if (++pos == data.length) {
+                pos = 0;
+            }
+            if (matches[current]) {
+                state[0] = 0;
+                return i + 1;
+            }
+        }
+        state[0] = current;
+        return -1;
+    }
+
+    /**
+     * Find end of the packet from the circular byte buffer. Bytes are read
+     * with absolute gets, so position and limit of the buffer are not used.
+     *
+     * @param data
+     *            Circular buffer.
+     * @param offset
+     *            Position of the first byte in the circular buffer.
+     * @param index
+     *            Offset from the first byte where search is started.
+     * @param count
+     *            Offset from the first byte where search is ended.
+     * @param state
+     *            Search state. Zero when new search is started.
+     * @return Offset after the first found terminator or -1 if terminator is
+     *         not found.
+     */
+    int find(final ByteBuffer data, final int offset, final int index, final int count, final int[] state) {
+        int current = state[0];
+        int size = data.capacity();
+        int pos = offset + index;
+        if (pos >= size) {
+            pos -= size;
+        }
+        for (int i = index; i < count; ++i) {
+            current = transitions[(current << BYTE_BITS) | (data.get(pos) & 0xFF)];
+            if (++pos == size) {
+                pos = 0;
+            }
+            if (matches[current]) {
+                state[0] = 0;
+                return i + 1;
+            }
+        }
+        state[0] = current;
+        return -1;
+    }
+}
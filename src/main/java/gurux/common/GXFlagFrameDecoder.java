@@ -0,0 +1,142 @@
+//
+// --------------------------------------------------------------------------
+//  Gurux Ltd
+//
+//
+//
+// Filename:        $HeadURL$
+//
+// Version:         $Revision$,
+//                  $Date$
+//                  $Author$
+//
+// Copyright (c) Gurux Ltd
+//
+//---------------------------------------------------------------------------
+//
+//  DESCRIPTION
+//
+// This file is a part of Gurux Device Framework.
+//
+// Gurux Device Framework is Open Source software; you can redistribute it
+// and/or modify it under the terms of the GNU General Public License
+// as published by the Free Software Foundation; version 2 of the License.
+// Gurux Device Framework is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+// See the GNU General Public License for more details.
+//
+// More information of Gurux products: http://www.gurux.org
+//
+// This code is licensed under the GNU General Public License v2.
+// Full text may be retrieved at http://www.gnu.org/licenses/gpl-2.0.txt
+//---------------------------------------------------------------------------
+
+package gurux.common;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Frame decoder for flag delimited frames, like HDLC. Each frame starts and
+ * ends with a flag byte. Flag byte is not found from the payload when byte
+ * stuffing is used, so frames are cut from the flags without handling the
+ * payload.
+ * <p>
+ * Last flag before the payload is the opening flag of the frame. Bytes before
+ * the opening flag are not returned with the frame. Closing flag of the frame
+ * can be also the opening flag of the next frame, so the next frame can start
+ * without an own opening flag.
+ * </p>
+ *
+ * @author Gurux Ltd.
+ */
+public class GXFlagFrameDecoder implements IGXFrameDecoder {
+    /**
+     * HDLC frame flag.
+     */
+    public static final byte HDLC_FLAG = 0x7E;
+
+    /**
+     * Flag byte.
+     */
+    private final byte flag;
+    /**
+     * Is opening flag received.
+     */
+    private boolean opened;
+    /**
+     * Is payload received after the opening flag.
+     */
+    private boolean payload;
+    /**
+     * Is previous frame closed. Closing flag opens the next frame.
+     */
+    private boolean closed;
+    /**
+     * Amount of bytes given for the current frame.
+     */
+    private int received;
+    /**
+     * Amount of bytes before the opening flag.
+     */
+    private int skipped;
+
+    /**
+     * Constructor. HDLC flag is used.
+     */
+    public GXFlagFrameDecoder() {
+        this(HDLC_FLAG);
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param value
+     *            Flag byte.
+     */
+    public GXFlagFrameDecoder(final byte value) {
+        flag = value;
+    }
+
+    /**
+     * @return Flag byte.
+     */
+    public final byte getFlag() {
+        return flag;
+    }
+
+    @Override
+    public final int decode(final ByteBuffer data) {
+        int start = data.position();
+        int count = data.remaining();
+        for (int pos = 0; pos != count; ++pos) {
+            if (data.get(start + pos) == flag) {
+                if (opened && payload) {
+                    closed = true;
+                    return pos + 1;
+                }
+                opened = true;
+                skipped = received + pos;
+            } else if (opened) {
+                payload = true;
+            }
+        }
+        received += count;
+        return -1;
+    }
+
+    @Override
+    public final int getSkipped() {
+        return skipped;
+    }
+
+    @Override
+    public final void reset() {
+        // Shared flag opens the frame that follows the completed frame.
+        opened = closed;
+        closed = false;
+        payload = false;
+        received = 0;
+        skipped = 0;
+    }
+}
@@ -0,0 +1,200 @@
+//
+// --------------------------------------------------------------------------
+//  Gurux Ltd
+//
+//
+//
+// Filename:        $HeadURL$
+//
+// Version:         $Revision$,
+//                  $Date$
+//                  $Author$
+//
+// Copyright (c) Gurux Ltd
+//
+//---------------------------------------------------------------------------
+//
+//  DESCRIPTION
+//
+// This file is a part of Gurux Device Framework.
+//
+// Gurux Device Framework is Open Source software; you can redistribute it
+// and/or modify it under the terms of the GNU General Public License
+// as published by the Free Software Foundation; version 2 of the License.
+// Gurux Device Framework is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+// See the GNU General Public License for more details.
+//
+// More information of Gurux products: http://www.gurux.org
+//
+// This code is licensed under the GNU General Public License v2.
+// Full text may be retrieved at http://www.gnu.org/licenses/gpl-2.0.txt
+//---------------------------------------------------------------------------
+
+package gurux.common;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Frame decoder for frames where frame length is given in a length field at
+ * a fixed offset. Frame size is header size (length offset and length size) +
+ * length value + length adjustment.
+ * <p>
+ * Length adjustment can be used when the length field doesn't count all the
+ * bytes of the frame. For example, if frame has two bytes checksum after the
+ * payload that is not counted in the length, length adjustment is 2. If
+ * length counts also the header, length adjustment is negative header size.
+ * </p>
+ *
+ * @author Gurux Ltd.
+ */
+public class GXLengthFieldFrameDecoder implements IGXFrameDecoder {
+    /**
+     * Offset of the length field.
+     */
+    private final int lengthOffset;
+    /**
+     * Size of the length field in bytes.
+     */
+    private final int lengthSize;
+    /**
+     * Amount of bytes that are added to the length value.
+     */
+    private final int lengthAdjustment;
+    /**
+     * Is length field in big endian byte order.
+     */
+    private final boolean bigEndian;
+    /**
+     * Amount of handled bytes of the current frame.
+     */
+    private long received;
+    /**
+     * Length value.
+     */
+    private long length;
+    /**
+     * Frame size or -1 if length field is not received yet.
+     */
+    private long frameSize = -1;
+
+    /**
+     * Constructor. Length field is in big endian byte order.
+     *
+     * @param offset
+     *            Offset of the length field.
+     * @param size
+     *            Size of the length field in bytes (1 - 4).
+     * @param adjustment
+     *            Amount of bytes that are added to the length value.
+     */
+    public GXLengthFieldFrameDecoder(final int offset, final int size, final int adjustment) {
+        this(offset, size, adjustment, true);
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param offset
+     *            Offset of the length field.
+     * @param size
+     *            Size of the length field in bytes (1 - 4).
+     * @param adjustment
+     *            Amount of bytes that are added to the length value.
+     * @param isBigEndian
+     *            Is length field in big endian byte order.
+     */
+    public GXLengthFieldFrameDecoder(final int offset, final int size, final int adjustment,
+            final boolean isBigEndian) {
+        if (offset < 0) {
+            throw new IllegalArgumentException("Invalid length offset.");
+        }
+        if (size < 1 || size > GXCommon.INTEGER_BYTES) {
+            throw new IllegalArgumentException("Invalid length size.");
+        }
+        lengthOffset = offset;
+        lengthSize = size;
+        lengthAdjustment = adjustment;
+        bigEndian = isBigEndian;
+    }
+
+    /**
+     * @return Offset of the length field.
+     */
+    public final int getLengthOffset() {
+        return lengthOffset;
+    }
+
+    /**
+     * @return Size of the length field in bytes.
+     */
+    public final int getLengthSize() {
+        return lengthSize;
+    }
+
+    /**
+     * @return Amount of bytes that are added to the length value.
+     */
+    public final int getLengthAdjustment() {
+        return lengthAdjustment;
+    }
+
+    /**
+     * @return Is length field in big endian byte order.
+     */
+    public final boolean isBigEndian() {
+        return bigEndian;
+    }
+
+    @Override
+    public final int decode(final ByteBuffer data) {
+        int start = data.position();
+        int count = data.remaining();
+        int pos = 0;
+        int value;
+        // Read length field.
+        while (frameSize == -1 && pos != count) {
+            if (received >= lengthOffset) {
+                value = data.get(start + pos) & GXCommon.MAX_BYTE_SIZE;
+                if (bigEndian) {
+                    length = (length << 8) | value;
+                } else {
+                    length |= (long) value << (8 * (received - lengthOffset));
+                }
+            }
+            ++received;
+            ++pos;
+            if (received == lengthOffset + lengthSize) {
+                frameSize = received + length + lengthAdjustment;
+                if (frameSize < received || frameSize > Integer.MAX_VALUE) {
+                    String msg = "Invalid frame length " + length + ".";
+                    // Next frame is decoded from the beginning.
+                    reset();
+                    throw new IllegalArgumentException(msg);
+                }
+            }
+        }
+        if (frameSize != -1) {
+            long needed = frameSize - received;
+            if (needed <= count - pos) {
+                received = frameSize;
+                return (int) (pos + needed);
+            }
+        }
+        received += count - pos;
+        return -1;
+    }
+
+    @Override
+    public final int getSkipped() {
+        return 0;
+    }
+
+    @Override
+    public final void reset() {
+        received = 0;
+        length = 0;
+        frameSize = -1;
+    }
+}
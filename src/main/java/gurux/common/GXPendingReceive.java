@@ -0,0 +1,170 @@
+//
+// --------------------------------------------------------------------------
+//  Gurux Ltd
+//
+//
+//
+// Filename:        $HeadURL$
+//
+// Version:         $Revision$,
+//                  $Date$
+//                  $Author$
+//
+// Copyright (c) Gurux Ltd
+//
+//---------------------------------------------------------------------------
+//
+//  DESCRIPTION
+//
+// This file is a part of Gurux Device Framework.
+//
+// Gurux Device Framework is Open Source software; you can redistribute it
+// and/or modify it under the terms of the GNU General Public License
+// as published by the Free Software Foundation; version 2 of the License.
+// Gurux Device Framework is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+// See the GNU General Public License for more details.
+//
+// More information of Gurux products: http://www.gurux.org
+//
+// This code is licensed under the GNU General Public License v2.
+// Full text may be retrieved at http://www.gnu.org/licenses/gpl-2.0.txt
+//---------------------------------------------------------------------------
+
+package gurux.common;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Asynchronous receive that is waiting for the data.
+ *
+ * @author Gurux Ltd.
+ * @param <T>
+ *            Reply type.
+ */
+final class GXPendingReceive<T> {
+    /**
+     * Receive parameters.
+     */
+    private final ReceiveParameters<T> args;
+    /**
+     * Completed future.
+     */
+    private final CompletableFuture<T> future = new CompletableFuture<T>();
+    /**
+     * End of packet matcher or null if only count is used.
+     */
+    private final GXEopMatcher matcher;
+    /**
+     * Timeout of the receive.
+     */
+    private volatile GXTimeout timeout;
+    /**
+     * Received data.
+     */
+    private Object data;
+    /**
+     * Is data received.
+     */
+    private boolean received;
+    /**
+     * Occurred exception.
+     */
+    private RuntimeException exception;
+
+    /**
+     * Constructor.
+     *
+     * @param value
+     *            Receive parameters.
+     * @param eop
+     *            End of packet matcher or null if only count is used.
+     */
+    GXPendingReceive(final ReceiveParameters<T> value, final GXEopMatcher eop) {
+        args = value;
+        matcher = eop;
+    }
+
+    /**
+     * @return Receive parameters.
+     */
+    ReceiveParameters<T> getArgs() {
+        return args;
+    }
+
+    /**
+     * @return Completed future.
+     */
+    CompletableFuture<T> getFuture() {
+        return future;
+    }
+
+    /**
+     * @return End of packet matcher or null if only count is used.
+     */
+    GXEopMatcher getMatcher() {
+        return matcher;
+    }
+
+    /**
+     * @param value
+     *            Timeout of the receive.
+     */
+    void setTimeout(final GXTimeout value) {
+        timeout = value;
+    }
+
+    /**
+     * Cancel timeout of the receive.
+     */
+    void cancelTimeout() {
+        GXTimeout tmp = timeout;
+        if (tmp != null) {
+            tmp.cancel();
+        }
+    }
+
+    /**
+     * Set received data.
+     *
+     * @param value
+     *            Received data.
+     */
+    void setData(final Object value) {
+        data = value;
+        received = true;
+    }
+
+    /**
+     * Set occurred exception.
+     *
+     * @param value
+     *            Occurred exception.
+     */
+    void setException(final RuntimeException value) {
+        exception = value;
+    }
+
+    /**
+     * Complete the future. This is called without holding the synchronous
+     * object, so continuations are not run under the lock.
+     */
+    void complete() {
+        cancelTimeout();
+        if (exception != null) {
+            future.completeExceptionally(exception);
+        } else if (received) {
+            try {
+                GXSynchronousMediaBase.addReply(args, data);
+            } catch (RuntimeException ex) {
+                future.completeExceptionally(ex);
+                return;
+            }
+            future.complete(args.getReply());
+        } else {
+            future.completeExceptionally(new TimeoutException());
+        }
+    }
+}
@@ -0,0 +1,154 @@
+//
+// --------------------------------------------------------------------------
+//  Gurux Ltd
+//
+//
+//
+// Filename:        $HeadURL$
+//
+// Version:         $Revision$,
+//                  $Date$
+//                  $Author$
+//
+// Copyright (c) Gurux Ltd
+//
+//---------------------------------------------------------------------------
+//
+//  DESCRIPTION
+//
+// This file is a part of Gurux Device Framework.
+//
+// Gurux Device Framework is Open Source software; you can redistribute it
+// and/or modify it under the terms of the GNU General Public License
+// as published by the Free Software Foundation; version 2 of the License.
+// Gurux Device Framework is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+// See the GNU General Public License for more details.
+//
+// More information of Gurux products: http://www.gurux.org
+//
+// This code is licensed under the GNU General Public License v2.
+// Full text may be retrieved at http://www.gnu.org/licenses/gpl-2.0.txt
+//---------------------------------------------------------------------------
+
+package gurux.common;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Leased reply data. Leased data is a read-only view to the receive buffer of
+ * {@link GXSynchronousMediaBase}. Received bytes are not copied, but the lease
+ * must be released when the data is handled, so the space can be used again
+ * for new received data.
+ *
+ * @author Gurux Ltd.
+ */
+public final class GXReceiveLease implements AutoCloseable {
+    /**
+     * Owner of the receive buffer.
+     */
+    private final GXSynchronousMediaBase owner;
+
+    /**
+     * Receive buffer where data is leased. Byte array or direct buffer.
+     */
+    private final Object buffer;
+
+    /**
+     * Leased data.
+     */
+    private final ByteBuffer data;
+
+    /**
+     * Is lease released.
+     */
+    private boolean released;
+
+    /**
+     * Constructor.
+     *
+     * @param target
+     *            Owner of the receive buffer.
+     * @param receiveBuffer
+     *            Receive buffer where data is leased.
+     * @param index
+     *            Index of the first leased byte.
+     * @param count
+     *            Amount of leased bytes.
+     */
+    GXReceiveLease(final GXSynchronousMediaBase target, final byte[] receiveBuffer, final int index,
+            final int count) {
+        owner = target;
+        buffer = receiveBuffer;
+        data = ByteBuffer.wrap(receiveBuffer, index, count).slice().asReadOnlyBuffer();
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param target
+     *            Owner of the receive buffer.
+     * @param receiveBuffer
+     *            Direct receive buffer where data is leased.
+     * @param index
+     *            Index of the first leased byte.
+     * @param count
+     *            Amount of leased bytes.
+     */
+    GXReceiveLease(final GXSynchronousMediaBase target, final ByteBuffer receiveBuffer, final int index,
+            final int count) {
+        owner = target;
+        buffer = receiveBuffer;
+        ByteBuffer tmp = receiveBuffer.duplicate();
+        tmp.position(index);
+        tmp.limit(index + count);
+        data = tmp.slice().asReadOnlyBuffer();
+    }
+
+    /**
+     * Get leased data. Data is valid until the lease is released.
+     *
+     * @return Read-only view to the received data.
+     */
+    public ByteBuffer getData() {
+        return data;
+    }
+
+    /**
+     * Get receive buffer where data is leased.
+     *
+     * @return Receive buffer.
+     */
+    Object getBuffer() {
+        return buffer;
+    }
+
+    /**
+     * Is lease released.
+     *
+     * @return True, if lease is released.
+     */
+    public boolean isReleased() {
+        return released;
+    }
+
+    /**
+     * Set lease released.
+     */
+    void setReleased() {
+        released = true;
+    }
+
+    /**
+     * Release leased data. Data can't be used after the lease is released.
+     */
+    public void release() {
+        owner.releaseLease(this);
+    }
+
+    @Override
+    public void close() {
+        release();
+    }
+}
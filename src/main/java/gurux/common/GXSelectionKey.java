@@ -0,0 +1,162 @@
+//
+// --------------------------------------------------------------------------
+//  Gurux Ltd
+//
+//
+//
+// Filename:        $HeadURL$
+//
+// Version:         $Revision$,
+//                  $Date$
+//                  $Author$
+//
+// Copyright (c) Gurux Ltd
+//
+//---------------------------------------------------------------------------
+//
+//  DESCRIPTION
+//
+// This file is a part of Gurux Device Framework.
+//
+// Gurux Device Framework is Open Source software; you can redistribute it
+// and/or modify it under the terms of the GNU General Public License
+// as published by the Free Software Foundation; version 2 of the License.
+// Gurux Device Framework is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+// See the GNU General Public License for more details.
+//
+// More information of Gurux products: http://www.gurux.org
+//
+// This code is licensed under the GNU General Public License v2.
+// Full text may be retrieved at http://www.gnu.org/licenses/gpl-2.0.txt
+//---------------------------------------------------------------------------
+
+package gurux.common;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Registration of the media to the selector.
+ *
+ * @author Gurux Ltd.
+ * @see GXSelector#register
+ */
+public final class GXSelectionKey {
+    /**
+     * Selector where media is registered.
+     */
+    private final GXSelector selector;
+    /**
+     * Registered media.
+     */
+    private final GXSynchronousMediaBase media;
+    /**
+     * Receive parameters that tell when the frame is complete.
+     */
+    private final ReceiveParameters<?> args;
+    /**
+     * Is key waiting in the check queue of the selector.
+     */
+    private final AtomicBoolean queued = new AtomicBoolean();
+    /**
+     * User object.
+     */
+    private volatile Object attachment;
+    /**
+     * Is registration canceled.
+     */
+    private volatile boolean canceled;
+
+    /**
+     * Constructor.
+     *
+     * @param owner
+     *            Selector where media is registered.
+     * @param target
+     *            Registered media.
+     * @param parameters
+     *            Receive parameters that tell when the frame is complete.
+     */
+    GXSelectionKey(final GXSelector owner, final GXSynchronousMediaBase target,
+            final ReceiveParameters<?> parameters) {
+        selector = owner;
+        media = target;
+        args = parameters;
+    }
+
+    /**
+     * Get selector where media is registered.
+     *
+     * @return Selector.
+     */
+    public GXSelector getSelector() {
+        return selector;
+    }
+
+    /**
+     * Get registered media.
+     *
+     * @return Media.
+     */
+    public GXSynchronousMediaBase getMedia() {
+        return media;
+    }
+
+    /**
+     * Get receive parameters that tell when the frame is complete.
+     *
+     * @return Receive parameters.
+     */
+    public ReceiveParameters<?> getParameters() {
+        return args;
+    }
+
+    /**
+     * Get user object.
+     *
+     * @return User object.
+     */
+    public Object getAttachment() {
+        return attachment;
+    }
+
+    /**
+     * Set user object.
+     *
+     * @param value
+     *            User object.
+     */
+    public void setAttachment(final Object value) {
+        attachment = value;
+    }
+
+    /**
+     * Is registration canceled.
+     *
+     * @return True, if registration is canceled.
+     */
+    public boolean isCanceled() {
+        return canceled;
+    }
+
+    /**
+     * Cancel registration. Media is not selected after this.
+     */
+    public void cancel() {
+        if (!canceled) {
+            canceled = true;
+            media.setSelectionKey(null);
+            selector.remove(this);
+        }
+    }
+
+    /**
+     * Is key waiting in the check queue of the selector.
+     *
+     * @return Queued flag.
+     */
+    AtomicBoolean getQueued() {
+        return queued;
+    }
+}
@@ -0,0 +1,235 @@
+//
+// --------------------------------------------------------------------------
+//  Gurux Ltd
+//
+//
+//
+// Filename:        $HeadURL$
+//
+// Version:         $Revision$,
+//                  $Date$
+//                  $Author$
+//
+// Copyright (c) Gurux Ltd
+//
+//---------------------------------------------------------------------------
+//
+//  DESCRIPTION
+//
+// This file is a part of Gurux Device Framework.
+//
+// Gurux Device Framework is Open Source software; you can redistribute it
+// and/or modify it under the terms of the GNU General Public License
+// as published by the Free Software Foundation; version 2 of the License.
+// Gurux Device Framework is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+// See the GNU General Public License for more details.
+//
+// More information of Gurux products: http://www.gurux.org
+//
+// This code is licensed under the GNU General Public License v2.
+// Full text may be retrieved at http://www.gnu.org/licenses/gpl-2.0.txt
+//---------------------------------------------------------------------------
+
+package gurux.common;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Selector waits until any of the registered media components has a complete
+ * frame. One thread can serve many media components like NIO selector serves
+ * many sockets.
+ * <p>
+ * Media notifies the selector when new data is appended, and only media
+ * components that have new data, or that had a complete frame in the
+ * previous select, are checked. Frame is found using end of packet or count
+ * of the receive parameters, or the frame decoder of the media. Frame is not
+ * read by the selector.
+ * </p>
+ *
+ * @author Gurux Ltd.
+ * @see GXSelectionKey
+ */
+public final class GXSelector implements AutoCloseable {
+    /**
+     * Registered keys.
+     */
+    private final Set<GXSelectionKey> keys =
+            Collections.newSetFromMap(new ConcurrentHashMap<GXSelectionKey, Boolean>());
+    /**
+     * Keys of the media components that must be checked.
+     */
+    private final ConcurrentLinkedQueue<GXSelectionKey> queue = new ConcurrentLinkedQueue<GXSelectionKey>();
+    /**
+     * Event that is set when media is added to the check queue.
+     */
+    private final AutoResetEvent event = new AutoResetEvent(false);
+    /**
+     * Is wake up requested.
+     */
+    private final AtomicBoolean wakeupRequested = new AtomicBoolean();
+    /**
+     * Keys that were selected in the previous select.
+     */
+    private List<GXSelectionKey> selected = new ArrayList<GXSelectionKey>();
+    /**
+     * Is selector closed.
+     */
+    private volatile boolean closed;
+
+    /**
+     * Register media to the selector. Media that uses lock-free mode can't be
+     * registered.
+     *
+     * @param media
+     *            Media.
+     * @param args
+     *            Receive parameters that tell when the frame is complete.
+     *            Wait time is not used.
+     * @return Selection key.
+     */
+    public GXSelectionKey register(final GXSynchronousMediaBase media, final ReceiveParameters<?> args) {
+        if (closed) {
+            throw new IllegalStateException("Selector is closed.");
+        }
+        if (media == null) {
+            throw new IllegalArgumentException("Invalid media.");
+        }
+        if (media.getFrameDecoder() == null && args.getEop() == null && args.getCount() == 0) {
+            throw new IllegalArgumentException("Either Count or Eop must be set.");
+        }
+        GXSelectionKey key = new GXSelectionKey(this, media, args);
+        media.setSelectionKey(key);
+        keys.add(key);
+        // Data might be already received.
+        notifyAppended(key);
+        return key;
+    }
+
+    /**
+     * Get registered keys.
+     *
+     * @return Registered keys.
+     */
+    public Set<GXSelectionKey> getKeys() {
+        return Collections.unmodifiableSet(keys);
+    }
+
+    /**
+     * Remove canceled key.
+     *
+     * @param key
+     *            Canceled key.
+     */
+    void remove(final GXSelectionKey key) {
+        keys.remove(key);
+    }
+
+    /**
+     * New data is appended to the media. This is called by the media.
+     *
+     * @param key
+     *            Selection key of the media.
+     */
+    void notifyAppended(final GXSelectionKey key) {
+        if (key.getQueued().compareAndSet(false, true)) {
+            queue.add(key);
+            event.set();
+        }
+    }
+
+    /**
+     * Wait until any of the registered media components has a complete frame.
+     * Media is selected again if its frame is not read before the next
+     * select. Only one thread can select at the time.
+     *
+     * @param waitTime
+     *            Wait time in milliseconds. Zero or negative value waits
+     *            forever.
+     * @return Keys of the media components that have a complete frame. List
+     *         is empty if wait time elapsed or wakeup was called.
+     */
+    public List<GXSelectionKey> select(final int waitTime) {
+        return select(true, waitTime);
+    }
+
+    /**
+     * Get media components that have a complete frame without waiting.
+     *
+     * @return Keys of the media components that have a complete frame.
+     */
+    public List<GXSelectionKey> selectNow() {
+        return select(false, 0);
+    }
+
+    /**
+     * Select media components that have a complete frame.
+     *
+     * @param wait
+     *            Is waited until frame is complete.
+     * @param waitTime
+     *            Wait time in milliseconds.
+     * @return Keys of the media components that have a complete frame.
+     */
+    private List<GXSelectionKey> select(final boolean wait, final int waitTime) {
+        // Unread frames are selected again.
+        for (GXSelectionKey it : selected) {
+            if (!it.isCanceled() && it.getQueued().compareAndSet(false, true)) {
+                queue.add(it);
+            }
+        }
+        List<GXSelectionKey> ready = new ArrayList<GXSelectionKey>();
+        long start = System.nanoTime();
+        GXSelectionKey key;
+        while (!closed) {
+            while ((key = queue.poll()) != null) {
+                // Key is queued again if data is appended while it's checked.
+                key.getQueued().set(false);
+                if (!key.isCanceled() && key.getMedia().hasFrame(key.getParameters())) {
+                    ready.add(key);
+                }
+            }
+            if (!ready.isEmpty() || !wait || wakeupRequested.getAndSet(false)) {
+                break;
+            }
+            if (waitTime > 0) {
+                long remaining = waitTime - (System.nanoTime() - start) / 1000000;
+                if (remaining <= 0 || !event.waitOne(remaining)) {
+                    break;
+                }
+            } else if (!event.waitOne()) {
+                break;
+            }
+        }
+        selected = ready;
+        return new ArrayList<GXSelectionKey>(ready);
+    }
+
+    /**
+     * Wake up the thread that is waiting in select.
+     */
+    public void wakeup() {
+        wakeupRequested.set(true);
+        event.set();
+    }
+
+    /**
+     * Close selector. All keys are canceled.
+     */
+    @Override
+    public void close() {
+        closed = true;
+        for (GXSelectionKey it : keys) {
+            it.cancel();
+        }
+        queue.clear();
+        wakeup();
+    }
+}
@@ -32,34 +32,140 @@
 
 package gurux.common;
 
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
 /**
- * This class is used to synchronize media component.
+ * This class is used to synchronize media component. Synchronous mode is
+ * active while the counter is bigger than zero. Counter is increased when
+ * the object is created and decreased when it's closed, so the object is
+ * used with try-with-resources:
+ * 
+ * <pre>
+ * try (GXSync sync = new GXSync(counter)) {
+ *     // Media is in synchronous mode.
+ * }
+ * </pre>
  * 
  * @author Gurux Ltd.
  */
-public class GXSync {
+public class GXSync implements AutoCloseable {
     /**
      * Synchronize count.
      */
-    private int[] count;
+    private final AtomicInteger counter;
+
+    /**
+     * Releases the counter of the deprecated constructor.
+     */
+    private final Releaser releaser;
+
+    /**
+     * Is object closed.
+     */
+    private final AtomicBoolean closed = new AtomicBoolean();
+
+    /**
+     * Constructor.
+     * 
+     * @param value
+     *              Counter of the owner.
+     */
+    public GXSync(final AtomicInteger value) {
+        counter = value;
+        releaser = null;
+        counter.incrementAndGet();
+    }
 
     /**
      * Constructor.
      * 
      * @param value
      *              Array to owner counter object.
+     * @deprecated Use {@link #GXSync(AtomicInteger)}. Counter is decreased
+     *             when the object is closed, or by the garbage collector if
+     *             it's not closed. Counter is updated while the array is
+     *             locked.
      */
+    @Deprecated
     public GXSync(final int[] value) {
-        count = value;
-        ++count[0];
+        counter = null;
+        releaser = new Releaser(value, closed);
+        synchronized (value) {
+            ++value[0];
+        }
     }
 
     /**
-     * Destructor.
+     * Check is synchronous mode active.
+     * 
+     * @param value
+     *              Counter of the owner.
+     * @return True, if synchronous mode is active.
+     */
+    public static boolean isActive(final AtomicInteger value) {
+        return value.get() > 0;
+    }
+
+    /**
+     * Decrease synchronize count. Counter is decreased only once, even if
+     * the object is closed many times.
      */
     @Override
-    protected final void finalize() throws Throwable {
-        --count[0];
-        super.finalize(); // not necessary if extending Object.
+    public final void close() {
+        if (releaser != null) {
+            releaser.release();
+        } else if (closed.compareAndSet(false, true)) {
+            counter.decrementAndGet();
+        }
+    }
+
+    /**
+     * Decreases the counter of the deprecated constructor when the object is
+     * closed or collected. Only the deprecated objects are finalized.
+     */
+    private static final class Releaser {
+        /**
+         * Synchronize count.
+         */
+        private final int[] count;
+
+        /**
+         * Is object closed.
+         */
+        private final AtomicBoolean closed;
+
+        /**
+         * Constructor.
+         * 
+         * @param value
+         *              Array to owner counter object.
+         * @param isClosed
+         *              Is object closed.
+         */
+        Releaser(final int[] value, final AtomicBoolean isClosed) {
+            count = value;
+            closed = isClosed;
+        }
+
+        /**
+         * Decrease synchronize count once.
+         */
+        void release() {
+            if (closed.compareAndSet(false, true)) {
+                synchronized (count) {
+                    --count[0];
+                }
+            }
+        }
+
+        /**
+         * Destructor.
+         */
+        @Override
+        protected void finalize() throws Throwable {
+            release();
+            super.finalize();
+        }
     }
 }
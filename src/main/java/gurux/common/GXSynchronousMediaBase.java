@@ -34,11 +34,20 @@
 
 package gurux.common;
 
-import java.io.UnsupportedEncodingException;
-import java.lang.reflect.Array;
 import java.lang.reflect.Type;
 import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.util.ArrayDeque;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.BiConsumer;
 
+import gurux.common.enums.OverflowPolicy;
 import gurux.common.enums.TraceLevel;
 
 /**
@@ -48,6 +57,11 @@ import gurux.common.enums.TraceLevel;
  */
 public class GXSynchronousMediaBase {
 
+    /**
+     * Empty receive buffer that is used when buffer is returned to the pool.
+     */
+    private static final byte[] EMPTY_BUFFER = new byte[0];
+
     /**
      * Trace level.
      */
@@ -58,9 +72,29 @@ public class GXSynchronousMediaBase {
      */
     private RuntimeException exception;
     /**
-     * Received bytes.
+     * Character set of the string replies.
+     */
+    private Charset charset = Charset.defaultCharset();
+    /**
+     * Received bytes. Buffer is used as a circular buffer.
      */
     private byte[] receivedBuffer = null;
+    /**
+     * Position in the received buffer where the first unread byte is.
+     */
+    private int readPosition;
+    /**
+     * Active leased reply.
+     */
+    private GXReceiveLease lease;
+    /**
+     * Amount of bytes before the read position that are kept for the lease.
+     */
+    private int leasedSize;
+    /**
+     * Last used end of packet matcher.
+     */
+    private GXEopMatcher eopMatcher;
     /**
      * Received event.
      */
@@ -69,6 +103,11 @@ public class GXSynchronousMediaBase {
      * Synchronous object.
      */
     private final Object sync = new Object();
+    /**
+     * Lock that protects the received data. Lock is used instead of
+     * synchronized blocks, so waiting threads don't pin virtual threads.
+     */
+    private final ReentrantLock lock = new ReentrantLock();
     /**
      * Amount of received bytes.
      */
@@ -78,283 +117,1352 @@ public class GXSynchronousMediaBase {
      * improve searching.
      */
     private int lastPosition;
+    /**
+     * End of packet search state in last position.
+     */
+    private final int[] lastState = new int[1];
+    /**
+     * End of packet matcher that was used in last position.
+     */
+    private GXEopMatcher lastMatcher;
+    /**
+     * Is end of packet found in last position.
+     */
+    private boolean lastFound;
+    /**
+     * Is frame searched when data is appended.
+     */
+    private boolean frameDetection;
+    /**
+     * Is receiver waiting for the frame.
+     */
+    private boolean waiting;
+    /**
+     * End of packet matcher of the waiting receiver.
+     */
+    private GXEopMatcher waitMatcher;
+    /**
+     * Amount of bytes the waiting receiver needs.
+     */
+    private int waitCount;
+    /**
+     * Frame decoder.
+     */
+    private IGXFrameDecoder frameDecoder;
+    /**
+     * Received buffer as a byte buffer for the frame decoder.
+     */
+    private ByteBuffer receivedView;
+    /**
+     * Received buffer as a read-only byte buffer for the frame listener.
+     */
+    private ByteBuffer readOnlyView;
+    /**
+     * Received bytes when direct buffer is used. Null if received bytes are
+     * stored to the byte array.
+     */
+    private ByteBuffer directBuffer;
+    /**
+     * View to the direct buffer that is used when bytes are appended.
+     */
+    private ByteBuffer directWriter;
+    /**
+     * View to the direct buffer that is used when bytes are read.
+     */
+    private ByteBuffer directReader;
+    /**
+     * Asynchronous receives that are waiting for the data.
+     */
+    private final ArrayDeque<GXPendingReceive<?>> pendingReceives = new ArrayDeque<GXPendingReceive<?>>();
+    /**
+     * Is received data handed from one appending thread to one receiving
+     * thread without locking.
+     */
+    private volatile boolean lockFree;
+    /**
+     * Amount of appended bytes in lock-free mode. Only appending thread
+     * updates this.
+     */
+    private final AtomicLong writeCount = new AtomicLong();
+    /**
+     * Amount of read bytes in lock-free mode. Only receiving thread updates
+     * this.
+     */
+    private final AtomicLong readCount = new AtomicLong();
+    /**
+     * Maximum size of the receive buffer. Zero if size is not limited.
+     */
+    private int maxBufferSize;
+    /**
+     * What is done when received data doesn't fit to the bounded buffer.
+     */
+    private OverflowPolicy overflowPolicy = OverflowPolicy.ERROR;
+    /**
+     * Signaled when received data is read from the bounded buffer.
+     */
+    private final Condition spaceAvailable = lock.newCondition();
+    /**
+     * How many times received data has not fit to the bounded buffer.
+     */
+    private volatile long overflowCount;
+    /**
+     * Amount of dropped bytes.
+     */
+    private volatile long droppedBytes;
+    /**
+     * Pool where receive buffers are taken. Null if buffer pool is not used.
+     */
+    private GXBufferPool bufferPool;
+    /**
+     * Correlator that routes received frames to the waiters. Null if
+     * correlator is not used.
+     */
+    private volatile GXCorrelator correlator;
+    /**
+     * Selection key when media is registered to the selector.
+     */
+    private volatile GXSelectionKey selectionKey;
 
     /**
      * Reset last position.
      */
     public final void resetLastPosition() {
+        lock.lock();
+        try {
+            resetSearch();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Reset search state without locking. Caller holds the lock or it's the
+     * receiving thread in lock-free mode.
+     */
+    private void resetSearch() {
         lastPosition = 0;
+        lastState[0] = 0;
+        lastFound = false;
+        if (frameDecoder != null) {
+            frameDecoder.reset();
+        }
+    }
+
+    /**
+     * Is frame searched when data is appended.
+     *
+     * @return True, if appended data is searched and received event is set
+     *         only when the waited frame is complete.
+     */
+    public final boolean getFrameDetection() {
+        return frameDetection;
+    }
+
+    /**
+     * Set is frame searched when data is appended. If true, received event is
+     * set by appendData when the frame that receiver is waiting for is
+     * complete, and media component doesn't need to call setReceived after
+     * new data is appended.
+     *
+     * @param value
+     *            Is frame searched when data is appended.
+     */
+    public final void setFrameDetection(final boolean value) {
+        frameDetection = value;
     }
 
     /**
      * Reset received size.
      */
     public final void resetReceivedSize() {
-        receivedSize = 0;
+        if (lockFree) {
+            // Receiving thread discards all appended data.
+            readCount.lazySet(writeCount.get());
+            resetSearch();
+            return;
+        }
+        lock.lock();
+        try {
+            receivedSize = 0;
+            resetSearch();
+            // Leased bytes are kept until the lease is released.
+            if (leasedSize == 0) {
+                readPosition = 0;
+            }
+            releaseBuffer();
+            spaceAvailable.signalAll();
+        } finally {
+            lock.unlock();
+        }
     }
 
     /**
-     * Set received event.
+     * Is received data handed from one appending thread to one receiving
+     * thread without locking.
+     *
+     * @return True, if lock-free mode is used.
      */
-    public final void setReceived() {
-        receivedEvent.set();
+    public final boolean getLockFree() {
+        return lockFree;
     }
 
     /**
-     * Get occurred exception.
+     * Set is received data handed from one appending thread to one receiving
+     * thread without locking. In lock-free mode appended bytes are published
+     * with ordered writes and the receiver reads them without taking a lock.
+     * <p>
+     * Only one thread can call appendData and only one thread can receive the
+     * data. Receive buffer is not grown in lock-free mode, so the buffer size
+     * must be bigger than the biggest unread data. Frame detection in
+     * appendData, asynchronous receive, leased replies, correlator and
+     * selector are not used in lock-free mode.
+     * </p>
+     * <p>
+     * Mode can be changed only when there is no unread data.
+     * </p>
      *
-     * @return Occurred exception.
+     * @param value
+     *            Is lock-free mode used.
      */
-    public final RuntimeException getException() {
-        return exception;
+    public final void setLockFree(final boolean value) {
+        lock.lock();
+        try {
+            if (getReceivedSize() != 0 || lease != null || !pendingReceives.isEmpty()) {
+                throw new IllegalStateException("Received data must be read before mode is changed.");
+            }
+            if (value && getCapacity() == 0) {
+                throw new IllegalArgumentException("Invalid buffer size.");
+            }
+            if (value && bufferPool != null) {
+                throw new IllegalStateException("Buffer pool is not used in lock-free mode.");
+            }
+            if (value && (correlator != null || selectionKey != null)) {
+                throw new IllegalStateException(
+                        "Correlator and selector are not used in lock-free mode.");
+            }
+            lockFree = value;
+            writeCount.set(0);
+            readCount.set(0);
+            receivedSize = 0;
+            readPosition = 0;
+            resetSearch();
+        } finally {
+            lock.unlock();
+        }
     }
 
     /**
-     * Set occurred exception.
+     * Get maximum size of the receive buffer.
      *
-     * @param value
-     *            Occurred exception.
+     * @return Maximum size of the receive buffer. Zero if size is not
+     *         limited.
      */
-    public final void setException(final RuntimeException value) {
-        exception = value;
+    public final int getMaxBufferSize() {
+        return maxBufferSize;
     }
 
     /**
-     * Get synchronous object.
+     * Set maximum size of the receive buffer. Unread and leased bytes can't
+     * take more space than this. Overflow policy tells what is done when
+     * appended data doesn't fit to the buffer.
+     * <p>
+     * In lock-free mode buffer is not grown and size of the buffer is the
+     * limit.
+     * </p>
      *
-     * @return Synchronous object.
+     * @param value
+     *            Maximum size of the receive buffer. Zero if size is not
+     *            limited.
      */
-    public final Object getSync() {
-        return sync;
+    public final void setMaxBufferSize(final int value) {
+        if (value < 0) {
+            throw new IllegalArgumentException("Invalid buffer size.");
+        }
+        lock.lock();
+        try {
+            maxBufferSize = value;
+            // Blocked appender might fit now.
+            spaceAvailable.signalAll();
+        } finally {
+            lock.unlock();
+        }
     }
 
     /**
-     * Get trace level.
+     * Get what is done when received data doesn't fit to the bounded buffer.
      *
-     * @return Current trace level.
+     * @return Overflow policy.
      */
-    public final TraceLevel getTrace() {
-        return trace;
+    public final OverflowPolicy getOverflowPolicy() {
+        return overflowPolicy;
     }
 
     /**
-     * Set trace level.
+     * Set what is done when received data doesn't fit to the bounded buffer.
      *
      * @param value
-     *            New trace level.
+     *            Overflow policy.
      */
-    public final void setTrace(final TraceLevel value) {
-        trace = value;
+    public final void setOverflowPolicy(final OverflowPolicy value) {
+        if (value == null) {
+            throw new IllegalArgumentException("Invalid overflow policy.");
+        }
+        lock.lock();
+        try {
+            overflowPolicy = value;
+            spaceAvailable.signalAll();
+        } finally {
+            lock.unlock();
+        }
     }
 
     /**
-     * @return Amount of received bytes.
+     * Get how many times received data has not fit to the bounded buffer.
+     *
+     * @return Amount of overflows.
      */
-    public int getReceivedSize() {
-        return receivedSize;
+    public final long getOverflowCount() {
+        return overflowCount;
     }
 
     /**
-     * @return Get received data.
+     * Get amount of bytes that are dropped because they didn't fit to the
+     * bounded buffer.
+     *
+     * @return Amount of dropped bytes.
      */
-    public byte[] getReceivedData() {
-        byte[] tmp = new byte[receivedSize];
-        if (receivedSize != 0) {
-            System.arraycopy(receivedBuffer, 0, tmp, 0, receivedSize);
+    public final long getDroppedBytes() {
+        return droppedBytes;
+    }
+
+    /**
+     * Reset overflow count and amount of dropped bytes.
+     */
+    public final void resetOverflowCounters() {
+        lock.lock();
+        try {
+            overflowCount = 0;
+            droppedBytes = 0;
+        } finally {
+            lock.unlock();
         }
-        return tmp;
     }
 
     /**
-     * Get data as byte array.
+     * Get correlator that routes received frames to the waiters.
      *
-     * @param value
-     *            Data object
-     * @return Values as byte array.
+     * @return Correlator or null if correlator is not used.
      */
-    public static byte[] getAsByteArray(final Object value) {
-        if (value == null) {
-            return new byte[0];
-        }
-        if (value instanceof byte[]) {
-            return (byte[]) value;
-        }
-        if (value instanceof Byte) {
-            return new byte[] { ((Byte) value) };
-        }
-        if (value instanceof java.lang.Character) {
-            return new byte[] { (byte) ((java.lang.Character) value).charValue() };
-        }
-        if (value instanceof Short) {
-            return ByteBuffer.allocate(GXCommon.SHORT_BYTES).putInt((Short) value).array();
-        }
+    public final GXCorrelator getCorrelator() {
+        return correlator;
+    }
 
-        if (value instanceof Integer) {
-            return ByteBuffer.allocate(GXCommon.INTEGER_BYTES).putInt((Integer) value).array();
-        }
-        if (value instanceof String) {
-            try {
-                return java.nio.ByteBuffer.wrap(((String) value).getBytes("ASCII")).array();
-            } catch (UnsupportedEncodingException ex) {
-                throw new RuntimeException(ex.getMessage());
+    /**
+     * Set correlator that routes received frames to the waiters.
+     *
+     * @param value
+     *            Correlator or null if correlator is not used.
+     */
+    final void setCorrelator(final GXCorrelator value) {
+        lock.lock();
+        try {
+            if (value != null && correlator != null) {
+                throw new IllegalStateException("Correlator is already used.");
+            }
+            if (value != null && lockFree) {
+                throw new IllegalStateException("Correlator is not used in lock-free mode.");
             }
+            correlator = value;
+        } finally {
+            lock.unlock();
         }
-        throw new RuntimeException("Unknown data type " + value.getClass().getName());
     }
 
     /**
-     * Convert byte array to object.
+     * Set selection key when media is registered to the selector.
      *
      * @param value
-     *            Byte array.
-     * @param type
-     *            Type to convert.
-     * @param readBytes
-     *            Amount of read bytes.
-     * @return Created object.
+     *            Selection key or null if media is not registered.
      */
-    public static Object byteArrayToObject(final byte[] value, final Type type, final int[] readBytes) {
-        if (type == byte[].class) {
-            readBytes[0] = value.length;
-            return value;
-        }
-        if (type == Byte.class) {
-            readBytes[0] = 1;
-            return value[0];
-        }
-        if (type == Character.class) {
-            readBytes[0] = 1;
-            return new Character((char) value[0]);
-        }
-        java.nio.ByteBuffer buff = java.nio.ByteBuffer.wrap(value);
-        if (type == Short.class) {
-            readBytes[0] = GXCommon.SHORT_BYTES;
-            buff.getShort();
-        }
-        if (type == Integer.class) {
-            readBytes[0] = GXCommon.INTEGER_BYTES;
-            buff.getInt();
+    final void setSelectionKey(final GXSelectionKey value) {
+        lock.lock();
+        try {
+            if (value != null && selectionKey != null) {
+                throw new IllegalStateException("Media is already registered to the selector.");
+            }
+            if (value != null && lockFree) {
+                throw new IllegalStateException("Selector is not used in lock-free mode.");
+            }
+            selectionKey = value;
+        } finally {
+            lock.unlock();
         }
-        if (type == Long.class) {
-            readBytes[0] = GXCommon.LONG_BYTES;
-            buff.getLong();
+    }
+
+    /**
+     * Check is there a complete frame in the received data without reading
+     * it. Media is not registered to the selector in lock-free mode.
+     *
+     * @param args
+     *            Receive parameters.
+     * @return True, if frame is complete.
+     */
+    final boolean hasFrame(final ReceiveParameters<?> args) {
+        GXEopMatcher matcher = null;
+        if (frameDecoder == null) {
+            matcher = getEopMatcher(args);
         }
-        if (type == String.class) {
-            readBytes[0] = value.length;
-            return new String(value);
+        lock.lock();
+        try {
+            return findFrame(matcher, args.getCount()) != -1;
+        } finally {
+            lock.unlock();
         }
-        throw new RuntimeException("Invalid object type.");
     }
 
     /**
-     * Construcctor.
+     * Get pool where receive buffers are taken.
      *
-     * @param bufferSize
-     *            Buffer size.
+     * @return Buffer pool or null if buffer pool is not used.
      */
-    public GXSynchronousMediaBase(final int bufferSize) {
-        receivedBuffer = new byte[bufferSize];
-        lastPosition = 0;
+    public final GXBufferPool getBufferPool() {
+        return bufferPool;
     }
 
     /**
-     * Append new data.
+     * Set pool where receive buffers are taken. When buffer pool is used,
+     * receive buffer is returned to the pool when all received data is read
+     * and idle media component doesn't hold a receive buffer.
+     * <p>
+     * Buffer pool is not used in lock-free mode.
+     * </p>
      *
-     * @param data
-     *            data to append.
-     * @param index
-     *            Index where start.
-     * @param count
-     *            Count of bytes to add.
+     * @param value
+     *            Buffer pool or null if buffer pool is not used.
+     * @see GXBufferPool#getShared()
      */
-    public final void appendData(final byte[] data, final int index, final int count) {
-        if (index < 0) {
-            throw new IllegalArgumentException("Invalid index value.");
-        }
-        if (count < 0) {
-            throw new IllegalArgumentException("Invalid count value.");
-        }
-        if (count != 0) {
-            synchronized (sync) {
-                // Allocate new buffer.
-                if (receivedSize + count - index > receivedBuffer.length) {
-                    int len = 2 * receivedBuffer.length;
-                    if (receivedSize + count - index > len) {
-                        len = 2 * (receivedSize + count - index);
-                    }
-                    byte[] tmp = new byte[len];
-                    System.arraycopy(receivedBuffer, 0, tmp, 0, receivedSize);
-                    receivedBuffer = tmp;
-                }
-                System.arraycopy(data, index, receivedBuffer, receivedSize, count);
-                receivedSize += count - index;
+    public final void setBufferPool(final GXBufferPool value) {
+        lock.lock();
+        try {
+            if (value != null && lockFree) {
+                throw new IllegalStateException("Buffer pool is not used in lock-free mode.");
             }
+            if (value != null && directBuffer != null) {
+                throw new IllegalStateException("Buffer pool is not used with direct buffer.");
+            }
+            bufferPool = value;
+            releaseBuffer();
+        } finally {
+            lock.unlock();
         }
     }
 
     /**
-     * Finds the first occurrence of the pattern in the text.
-     *
-     * @param data
-     *            Data where to find.
-     * @param pattern
-     *            Search pattern.
-     * @param index
-     *            Byte index to start.
-     * @param count
-     *            Count of bytes to search.
-     * @return Is pattern found.
+     * Return receive buffer to the buffer pool if all received data is read.
      */
-    public static int indexOf(final byte[] data, final byte[] pattern, final int index, final int count) {
-        int[] failure = computeFailure(pattern);
+    private void releaseBuffer() {
+        if (bufferPool != null && receivedSize == 0 && leasedSize == 0
+                && receivedBuffer.length != 0
+                && (lease == null || lease.getBuffer() != receivedBuffer)) {
+            bufferPool.release(receivedBuffer);
+            receivedBuffer = EMPTY_BUFFER;
+            readPosition = 0;
+            // Views are not allowed to keep the returned buffer.
+            resetViews();
+        }
+    }
 
-        int j = 0;
-        if (data.length == 0 || data.length < index) {
-            return -1;
+    /**
+     * Reset views to the received buffer. This is called when received buffer
+     * is changed.
+     */
+    private void resetViews() {
+        receivedView = null;
+        readOnlyView = null;
+        if (directBuffer == null) {
+            directWriter = null;
+            directReader = null;
+        } else {
+            directWriter = directBuffer.duplicate();
+            directReader = directBuffer.duplicate();
         }
+    }
 
-        for (int i = index; i < count; i++) {
-            while (j > 0 && pattern[j] != data[i]) {
-                j = failure[j - 1];
-            }
-            if (pattern[j] == data[i]) {
-                j++;
-            }
-            if (j == pattern.length) {
-                return i - pattern.length + 1;
-            }
+    /**
+     * Create new view to the received buffer.
+     *
+     * @return Byte buffer that shares the received bytes.
+     */
+    private ByteBuffer createView() {
+        if (directBuffer == null) {
+            return ByteBuffer.wrap(receivedBuffer);
         }
-        return -1;
+        return directBuffer.duplicate();
     }
 
     /**
-     * Computes the failure function using a boot-strapping process, where the
-     * pattern is matched against itself.
+     * Get size of the received buffer.
      *
-     * @param pattern
-     *            Pattern to search.
-     * @return Failure pattern.
+     * @return Size of the received buffer.
      */
-    private static int[] computeFailure(final byte[] pattern) {
-        int[] failure = new int[pattern.length];
-        int j = 0;
-        for (int i = 1; i < pattern.length; i++) {
-            while (j > 0 && pattern[j] != pattern[i]) {
-                j = failure[j - 1];
-            }
-            if (pattern[j] == pattern[i]) {
-                j++;
-            }
-            failure[i] = j;
+    private int getCapacity() {
+        if (directBuffer == null) {
+            return receivedBuffer.length;
         }
-        return failure;
+        return directBuffer.capacity();
     }
 
     /**
-     * Find data from buffer.
+     * Get received buffer.
      *
-     * @param <T>
-     *            Data type to search.
+     * @return Received byte array or direct buffer.
+     */
+    private Object getStorage() {
+        if (directBuffer == null) {
+            return receivedBuffer;
+        }
+        return directBuffer;
+    }
+
+    /**
+     * Is received data stored to the direct byte buffer.
+     *
+     * @return True, if direct buffer is used.
+     */
+    public final boolean getDirect() {
+        return directBuffer != null;
+    }
+
+    /**
+     * Set is received data stored to the direct byte buffer. Direct buffer is
+     * allocated outside of the Java heap, so media component can append data
+     * that is read from the native code or NIO channel without copying it to
+     * the heap first.
+     * <p>
+     * Buffer pool is not used with direct buffer. Mode can be changed only
+     * when there is no unread data.
+     * </p>
+     *
+     * @param value
+     *            Is direct buffer used.
+     * @see #appendData(ByteBuffer)
+     */
+    public final void setDirect(final boolean value) {
+        lock.lock();
+        try {
+            if (getReceivedSize() != 0 || lease != null || !pendingReceives.isEmpty()) {
+                throw new IllegalStateException("Received data must be read before mode is changed.");
+            }
+            if (value && bufferPool != null) {
+                throw new IllegalStateException("Buffer pool is not used with direct buffer.");
+            }
+            if (value != (directBuffer != null)) {
+                if (value) {
+                    directBuffer = ByteBuffer.allocateDirect(receivedBuffer.length);
+                    receivedBuffer = EMPTY_BUFFER;
+                } else {
+                    receivedBuffer = new byte[directBuffer.capacity()];
+                    directBuffer = null;
+                }
+                readPosition = 0;
+                receivedSize = 0;
+                leasedSize = 0;
+                writeCount.set(0);
+                readCount.set(0);
+                resetViews();
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Update received size and read position from the lock-free counters.
+     * This is called only by the receiving thread.
+     */
+    private void updateLockFree() {
+        long read = readCount.get();
+        receivedSize = (int) (writeCount.get() - read);
+        readPosition = (int) (read % getCapacity());
+    }
+
+    /**
+     * Read bytes can be used again by the appending thread in lock-free mode.
+     *
+     * @param size
+     *            Received size before the bytes were read.
+     */
+    private void readLockFree(final int size) {
+        if (size != receivedSize) {
+            readCount.lazySet(readCount.get() + size - receivedSize);
+        }
+    }
+
+    /**
+     * Get frame decoder.
+     *
+     * @return Frame decoder or null if end of packet and count are used.
+     */
+    public final IGXFrameDecoder getFrameDecoder() {
+        return frameDecoder;
+    }
+
+    /**
+     * Set frame decoder. If frame decoder is set, it's used to find the frames
+     * and end of packet and count of the receive parameters are ignored.
+     *
+     * @param value
+     *            Frame decoder or null if end of packet and count are used.
+     */
+    public final void setFrameDecoder(final IGXFrameDecoder value) {
+        lock.lock();
+        try {
+            frameDecoder = value;
+            resetSearch();
+            lastMatcher = null;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Set received event.
+     */
+    public final void setReceived() {
+        receivedEvent.set();
+    }
+
+    /**
+     * Get occurred exception.
+     *
+     * @return Occurred exception.
+     */
+    public final RuntimeException getException() {
+        return exception;
+    }
+
+    /**
+     * Set occurred exception.
+     *
+     * @param value
+     *            Occurred exception.
+     */
+    public final void setException(final RuntimeException value) {
+        exception = value;
+        if (value != null) {
+            failReceives(value);
+        }
+    }
+
+    /**
+     * Complete all asynchronous receives with the exception.
+     *
+     * @param value
+     *            Occurred exception.
+     */
+    private void failReceives(final RuntimeException value) {
+        GXPendingReceive<?> it;
+        do {
+            lock.lock();
+            try {
+                it = pendingReceives.poll();
+            } finally {
+                lock.unlock();
+            }
+            if (it != null) {
+                it.setException(value);
+                it.complete();
+            }
+        } while (it != null);
+    }
+
+    /**
+     * Get synchronous object. Media component can lock it to synchronize its
+     * own operations. Received data is protected with an internal lock, so
+     * it's not locked while waiting for the data.
+     *
+     * @return Synchronous object.
+     */
+    public final Object getSync() {
+        return sync;
+    }
+
+    /**
+     * Get character set of the string replies.
+     *
+     * @return Character set.
+     */
+    public final Charset getCharset() {
+        return charset;
+    }
+
+    /**
+     * Set character set of the string replies. Character set of the receive
+     * parameters is used if it's set.
+     *
+     * @param value
+     *            Character set.
+     */
+    public final void setCharset(final Charset value) {
+        if (value == null) {
+            throw new IllegalArgumentException("Invalid character set.");
+        }
+        charset = value;
+    }
+
+    /**
+     * Get trace level.
+     *
+     * @return Current trace level.
+     */
+    public final TraceLevel getTrace() {
+        return trace;
+    }
+
+    /**
+     * Set trace level.
+     *
+     * @param value
+     *            New trace level.
+     */
+    public final void setTrace(final TraceLevel value) {
+        trace = value;
+    }
+
+    /**
+     * @return Amount of received bytes.
+     */
+    public int getReceivedSize() {
+        if (lockFree) {
+            return (int) (writeCount.get() - readCount.get());
+        }
+        lock.lock();
+        try {
+            return receivedSize;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * @return Get received data.
+     */
+    public byte[] getReceivedData() {
+        if (lockFree) {
+            updateLockFree();
+            return copyReceived();
+        }
+        lock.lock();
+        try {
+            return copyReceived();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Copy all received bytes to the new array.
+     *
+     * @return Received bytes.
+     */
+    private byte[] copyReceived() {
+        byte[] tmp = new byte[receivedSize];
+        if (receivedSize != 0) {
+            copyReceived(0, tmp, 0, receivedSize);
+        }
+        return tmp;
+    }
+
+    /**
+     * Copy received bytes to the target array.
+     *
+     * @param offset
+     *            Offset from the first unread byte.
+     * @param target
+     *            Target array.
+     * @param targetIndex
+     *            Index in the target array where bytes are copied.
+     * @param count
+     *            Amount of bytes to copy.
+     */
+    private void copyReceived(final int offset, final byte[] target, final int targetIndex, final int count) {
+        int pos = readPosition + offset;
+        if (pos >= getCapacity()) {
+            pos -= getCapacity();
+        }
+        // Data might be wrapped around the end of the buffer.
+        int first = Math.min(count, getCapacity() - pos);
+        if (directBuffer == null) {
+            System.arraycopy(receivedBuffer, pos, target, targetIndex, first);
+            if (first != count) {
+                System.arraycopy(receivedBuffer, 0, target, targetIndex + first, count - first);
+            }
+        } else {
+            ByteBuffer source = directReader;
+            source.clear();
+            source.position(pos);
+            source.get(target, targetIndex, first);
+            if (first != count) {
+                source.clear();
+                source.get(target, targetIndex + first, count - first);
+            }
+        }
+    }
+
+    /**
+     * Copy received bytes from the direct buffer to the target buffer.
+     *
+     * @param offset
+     *            Offset from the first unread byte.
+     * @param target
+     *            Target buffer. Position of the buffer is moved.
+     * @param count
+     *            Amount of bytes to copy.
+     */
+    private void copyReceived(final int offset, final ByteBuffer target, final int count) {
+        int pos = readPosition + offset;
+        if (pos >= getCapacity()) {
+            pos -= getCapacity();
+        }
+        int first = Math.min(count, getCapacity() - pos);
+        ByteBuffer source = directReader;
+        source.clear();
+        source.position(pos);
+        source.limit(pos + first);
+        target.put(source);
+        if (first != count) {
+            source.clear();
+            source.limit(count - first);
+            target.put(source);
+        }
+    }
+
+    /**
+     * Get data as byte array. Encoder of the data is searched from
+     * {@link GXCodecRegistry}. Use {@link GXCodecRegistry#encode} to write
+     * the data to an existing buffer.
+     *
+     * @param value
+     *            Data object
+     * @return Values as byte array.
+     */
+    public static byte[] getAsByteArray(final Object value) {
+        if (value instanceof byte[]) {
+            return (byte[]) value;
+        }
+        byte[] data = new byte[GXCodecRegistry.getSize(value)];
+        GXCodecRegistry.encode(value, ByteBuffer.wrap(data));
+        return data;
+    }
+
+    /**
+     * Convert byte array to object. Decoder of the type is searched from
+     * {@link GXCodecRegistry}.
+     *
+     * @param value
+     *            Byte array.
+     * @param type
+     *            Type to convert.
+     * @param readBytes
+     *            Amount of read bytes.
+     * @return Created object.
+     */
+    public static Object byteArrayToObject(final byte[] value, final Type type, final int[] readBytes) {
+        IGXReplyDecoder<?> decoder = GXCodecRegistry.getDecoder(type);
+        if (decoder.getSize() == 0) {
+            readBytes[0] = value.length;
+        } else {
+            readBytes[0] = decoder.getSize();
+        }
+        return decoder.decode(ByteBuffer.wrap(value));
+    }
+
+    /**
+     * Construcctor.
+     *
+     * @param bufferSize
+     *            Buffer size.
+     */
+    public GXSynchronousMediaBase(final int bufferSize) {
+        receivedBuffer = new byte[bufferSize];
+        lastPosition = 0;
+    }
+
+    /**
+     * Constructor. Receive buffer is taken from the buffer pool when data is
+     * received.
+     *
+     * @param pool
+     *            Buffer pool.
+     * @see GXBufferPool#getShared()
+     */
+    public GXSynchronousMediaBase(final GXBufferPool pool) {
+        if (pool == null) {
+            throw new IllegalArgumentException("Invalid buffer pool.");
+        }
+        receivedBuffer = EMPTY_BUFFER;
+        bufferPool = pool;
+    }
+
+    /**
+     * Append new data.
+     *
+     * @param data
+     *            data to append.
+     * @param index
+     *            Index where start.
+     * @param count
+     *            Count of bytes to add.
+     */
+    public final void appendData(final byte[] data, final int index, final int count) {
+        if (index < 0) {
+            throw new IllegalArgumentException("Invalid index value.");
+        }
+        if (count < 0) {
+            throw new IllegalArgumentException("Invalid count value.");
+        }
+        if (count != 0) {
+            appendReceived(ByteBuffer.wrap(data, index, count));
+        }
+    }
+
+    /**
+     * Append new data. All remaining bytes of the buffer are appended and
+     * position of the buffer is moved to the limit. Media component can read
+     * the data from the channel to the direct buffer and append it without
+     * copying it to the byte array first.
+     *
+     * @param data
+     *            data to append.
+     */
+    public final void appendData(final ByteBuffer data) {
+        if (data.hasRemaining()) {
+            appendReceived(data);
+        }
+    }
+
+    /**
+     * Append new data.
+     *
+     * @param data
+     *            data to append.
+     */
+    private void appendReceived(final ByteBuffer data) {
+        boolean complete = false;
+        if (lockFree) {
+            appendLockFree(data);
+        } else {
+            RuntimeException failure = null;
+            lock.lock();
+            try {
+                if (maxBufferSize == 0) {
+                    writeReceived(data, data.remaining());
+                } else {
+                    failure = appendBounded(data);
+                }
+                // Wake up the receiver only when the frame is complete.
+                try {
+                    if (frameDetection && waiting && findFrame(waitMatcher, waitCount) != -1) {
+                        waiting = false;
+                        receivedEvent.set();
+                    }
+                } catch (RuntimeException ex) {
+                    // Invalid frame is reported to the receiver.
+                    waiting = false;
+                    failure = ex;
+                }
+                complete = !pendingReceives.isEmpty();
+            } finally {
+                lock.unlock();
+            }
+            if (complete) {
+                completeReceives();
+            }
+            if (failure != null) {
+                setException(failure);
+                receivedEvent.set();
+            }
+        }
+        GXCorrelator c = correlator;
+        if (c != null) {
+            try {
+                c.dispatch();
+            } catch (RuntimeException ex) {
+                setException(ex);
+                receivedEvent.set();
+            }
+        }
+        GXSelectionKey key = selectionKey;
+        if (key != null) {
+            key.getSelector().notifyAppended(key);
+        }
+    }
+
+    /**
+     * Write new data to the end of the received data. Buffer is grown if
+     * needed.
+     *
+     * @param data
+     *            data to append.
+     * @param count
+     *            Count of bytes to add.
+     */
+    private void writeReceived(final ByteBuffer data, final int count) {
+        // Allocate new buffer. Leased bytes are not overwritten.
+        if (receivedSize + leasedSize + count > getCapacity()) {
+            int len = 2 * getCapacity();
+            if (receivedSize + count > len) {
+                len = 2 * (receivedSize + count);
+            }
+            // Bounded buffer is not grown over the limit.
+            if (maxBufferSize != 0 && len > maxBufferSize) {
+                len = Math.max(maxBufferSize, receivedSize + count);
+            }
+            if (directBuffer != null) {
+                ByteBuffer tmp = ByteBuffer.allocateDirect(len);
+                if (receivedSize != 0) {
+                    copyReceived(0, tmp, receivedSize);
+                }
+                directBuffer = tmp;
+            } else {
+                byte[] tmp;
+                if (bufferPool == null) {
+                    tmp = new byte[len];
+                } else {
+                    tmp = bufferPool.acquire(len);
+                }
+                if (receivedSize != 0) {
+                    copyReceived(0, tmp, 0, receivedSize);
+                }
+                if (bufferPool != null && receivedBuffer.length != 0
+                        && (lease == null || lease.getBuffer() != receivedBuffer)) {
+                    bufferPool.release(receivedBuffer);
+                }
+                receivedBuffer = tmp;
+            }
+            resetViews();
+            readPosition = 0;
+            // Leased data is left to the old buffer.
+            leasedSize = 0;
+        }
+        int pos = readPosition + receivedSize;
+        if (pos >= getCapacity()) {
+            pos -= getCapacity();
+        }
+        putReceived(pos, data, count);
+        receivedSize += count;
+    }
+
+    /**
+     * Copy bytes to the received buffer. Write is wrapped around the end of
+     * the buffer if needed.
+     *
+     * @param pos
+     *            Position in the received buffer.
+     * @param data
+     *            Copied bytes. Position of the buffer is moved.
+     * @param count
+     *            Amount of bytes to copy.
+     */
+    private void putReceived(final int pos, final ByteBuffer data, final int count) {
+        int first = Math.min(count, getCapacity() - pos);
+        if (directBuffer == null) {
+            data.get(receivedBuffer, pos, first);
+            if (first != count) {
+                data.get(receivedBuffer, 0, count - first);
+            }
+        } else {
+            int limit = data.limit();
+            ByteBuffer target = directWriter;
+            target.clear();
+            target.position(pos);
+            data.limit(data.position() + first);
+            target.put(data);
+            if (first != count) {
+                target.clear();
+                data.limit(data.position() + count - first);
+                target.put(data);
+            }
+            data.limit(limit);
+        }
+    }
+
+    /**
+     * Skip bytes that are dropped from the appended data.
+     *
+     * @param data
+     *            Appended data.
+     * @param count
+     *            Amount of dropped bytes.
+     */
+    private void dropAppended(final ByteBuffer data, final int count) {
+        data.position(data.position() + count);
+        droppedBytes += count;
+    }
+
+    /**
+     * Append new data to the bounded buffer. Overflow policy is used if data
+     * doesn't fit to the buffer.
+     *
+     * @param data
+     *            data to append.
+     * @return Exception that receiver is failed with or null.
+     */
+    private RuntimeException appendBounded(final ByteBuffer data) {
+        int count = data.remaining();
+        int free = maxBufferSize - receivedSize - leasedSize;
+        if (count <= free) {
+            writeReceived(data, count);
+            return null;
+        }
+        ++overflowCount;
+        switch (overflowPolicy) {
+        case BLOCK:
+            return appendBlocking(data);
+        case DROP_OLDEST:
+            if (isLeased()) {
+                // Removed bytes are not freed before the lease is released.
+                return dropNewest(data, free);
+            }
+            // Only the newest bytes are kept if data is bigger than the
+            // buffer.
+            int keep = Math.min(count, Math.max(0, maxBufferSize - leasedSize));
+            int removed = Math.min(receivedSize, keep - Math.max(0, free));
+            if (removed > 0) {
+                skipReceived(removed);
+                droppedBytes += removed;
+            }
+            dropAppended(data, count - keep);
+            if (keep != 0) {
+                writeReceived(data, keep);
+            }
+            return null;
+        case DROP_NEWEST:
+            return dropNewest(data, free);
+        default:
+            dropAppended(data, count);
+            return new IllegalStateException("Receive buffer overflow.");
+        }
+    }
+
+    /**
+     * Append new data to the bounded buffer in parts. Appending thread waits
+     * until the receiver has read enough data.
+     *
+     * @param data
+     *            data to append.
+     * @return Always null.
+     */
+    private RuntimeException appendBlocking(final ByteBuffer data) {
+        while (data.hasRemaining()) {
+            int free = maxBufferSize == 0 ? data.remaining() : maxBufferSize - receivedSize - leasedSize;
+            if (free > 0) {
+                writeReceived(data, Math.min(free, data.remaining()));
+            } else if (overflowPolicy != OverflowPolicy.BLOCK) {
+                // Policy is changed while waiting.
+                dropAppended(data, data.remaining());
+            } else {
+                // Receiver must be woken up, or nobody reads the full buffer.
+                receivedEvent.set();
+                if (!pendingReceives.isEmpty()) {
+                    lock.unlock();
+                    try {
+                        completeReceives();
+                    } finally {
+                        lock.lock();
+                    }
+                    if (maxBufferSize == 0 || maxBufferSize - receivedSize - leasedSize > 0) {
+                        continue;
+                    }
+                }
+                try {
+                    spaceAvailable.await();
+                } catch (InterruptedException e) {
+                    // Rest of the data is dropped.
+                    Thread.currentThread().interrupt();
+                    dropAppended(data, data.remaining());
+                }
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Append new data without locking. This is called only by the appending
+     * thread.
+     *
+     * @param data
+     *            data to append.
+     */
+    private void appendLockFree(final ByteBuffer data) {
+        int count = data.remaining();
+        long written = writeCount.get();
+        if (written - readCount.get() + count > getCapacity()) {
+            throw new IllegalStateException("Receive buffer is full.");
+        }
+        putReceived((int) (written % getCapacity()), data, count);
+        // Bytes are visible to the receiver before the new count.
+        writeCount.lazySet(written + count);
+        receivedEvent.set();
+    }
+
+    /**
+     * Append bytes that fit to the buffer and drop the rest.
+     *
+     * @param data
+     *            data to append.
+     * @param free
+     *            Amount of free bytes in the buffer.
+     * @return Always null.
+     */
+    private RuntimeException dropNewest(final ByteBuffer data, final int free) {
+        if (free > 0) {
+            writeReceived(data, free);
+        }
+        dropAppended(data, data.remaining());
+        return null;
+    }
+
+    /**
+     * Is active lease pointing to the receive buffer.
+     *
+     * @return True, if consumed bytes are reserved for the lease.
+     */
+    private boolean isLeased() {
+        return lease != null && lease.getBuffer() == getStorage();
+    }
+
+    /**
+     * Release leased reply.
+     *
+     * @param value
+     *            Released lease.
+     */
+    final void releaseLease(final GXReceiveLease value) {
+        lock.lock();
+        try {
+            if (!value.isReleased()) {
+                value.setReleased();
+                if (value == lease) {
+                    lease = null;
+                    if (value.getBuffer() == getStorage()) {
+                        leasedSize = 0;
+                        if (receivedSize == 0) {
+                            readPosition = 0;
+                        }
+                        releaseBuffer();
+                        spaceAvailable.signalAll();
+                    } else if (bufferPool != null && value.getBuffer() instanceof byte[]) {
+                        // Buffer was grown while the reply was leased.
+                        bufferPool.release((byte[]) value.getBuffer());
+                    }
+                }
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Move received data to the beginning of the received buffer. This is
+     * done only when leased reply is wrapped around the end of the buffer.
+     */
+    private void moveToBeginning() {
+        // Rotate buffer in place, so new buffer is not allocated.
+        reverse(0, readPosition);
+        reverse(readPosition, getCapacity());
+        reverse(0, getCapacity());
+        readPosition = 0;
+    }
+
+    /**
+     * Reverse bytes in the received buffer.
+     *
+     * @param start
+     *            First index.
+     * @param end
+     *            End index.
+     */
+    private void reverse(final int start, final int end) {
+        byte tmp;
+        if (directBuffer == null) {
+            for (int i = start, j = end - 1; i < j; ++i, --j) {
+                tmp = receivedBuffer[i];
+                receivedBuffer[i] = receivedBuffer[j];
+                receivedBuffer[j] = tmp;
+            }
+        } else {
+            for (int i = start, j = end - 1; i < j; ++i, --j) {
+                tmp = directBuffer.get(i);
+                directBuffer.put(i, directBuffer.get(j));
+                directBuffer.put(j, tmp);
+            }
+        }
+    }
+
+    /**
+     * Finds the first occurrence of the pattern in the text.
+     *
+     * @param data
+     *            Data where to find.
+     * @param pattern
+     *            Search pattern.
+     * @param index
+     *            Byte index to start.
+     * @param count
+     *            Count of bytes to search.
+     * @return Is pattern found.
+     */
+    public static int indexOf(final byte[] data, final byte[] pattern, final int index, final int count) {
+        int[] failure = computeFailure(pattern);
+
+        int j = 0;
+        if (data.length == 0 || data.length < index) {
+            return -1;
+        }
+
+        for (int i = index; i < count; i++) {
+            while (j > 0 && pattern[j] != data[i]) {
+                j = failure[j - 1];
+            }
+            if (pattern[j] == data[i]) {
+                j++;
+            }
+            if (j == pattern.length) {
+                return i - pattern.length + 1;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Computes the failure function using a boot-strapping process, where the
+     * pattern is matched against itself.
+     *
+     * @param pattern
+     *            Pattern to search.
+     * @return Failure pattern.
+     */
+    private static int[] computeFailure(final byte[] pattern) {
+        int[] failure = new int[pattern.length];
+        int j = 0;
+        for (int i = 1; i < pattern.length; i++) {
+            while (j > 0 && pattern[j] != pattern[i]) {
+                j = failure[j - 1];
+            }
+            if (pattern[j] == pattern[i]) {
+                j++;
+            }
+            failure[i] = j;
+        }
+        return failure;
+    }
+
+    /**
+     * Find data from buffer.
+     *
+     * @param <T>
+     *            Data type to search.
      * @param args
      *            Receive parameters.
      * @param isFound
@@ -364,130 +1472,279 @@ public class GXSynchronousMediaBase {
      */
     private <T> int findData(final ReceiveParameters<T> args, final boolean[] isFound) {
         boolean isReceived;
-        int nSize = 0, foundPosition = -1;
-        int lastBuffSize = 0;
-        java.util.Calendar calendar = java.util.Calendar.getInstance();
-        long startTime = calendar.getTime().getTime();
-        byte[] terminator = null;
-        int nMinSize = (int) Math.max(args.getCount(), nSize);
+        int foundPosition;
+        // Monotonic clock is used, so system time changes don't affect.
+        long startTime = System.nanoTime();
+        GXEopMatcher matcher = null;
+        if (frameDecoder == null) {
+            matcher = getEopMatcher(args);
+        }
         int waitTime = args.getWaitTime();
         this.exception = null;
         if (waitTime <= 0) {
             waitTime = -1;
         }
         isFound[0] = true;
-        if (args.getEop() != null) {
-            if (args.getEop() instanceof Array) {
-                terminator = getAsByteArray(Array.get(args.getEop(), 0));
-            } else {
-                terminator = getAsByteArray(args.getEop());
-            }
-            nSize = terminator.length;
-        }
-
         // Wait until reply occurred.
         do {
-            if (waitTime == 0) {
-                isFound[0] = false;
-                // If we want to read all data.
-                if (args.getAllData()) {
-                    foundPosition = receivedSize;
-                } else {
-                    foundPosition = -1;
+            if (lockFree) {
+                updateLockFree();
+                int size = receivedSize;
+                try {
+                    foundPosition = findFrame(matcher, args.getCount());
+                } finally {
+                    // Invalid bytes might be dropped.
+                    readLockFree(size);
                 }
+            } else {
+                lock.lock();
+                try {
+                    foundPosition = findFrame(matcher, args.getCount());
+                    // Appended data is searched while receiver is waiting.
+                    waiting = foundPosition == -1;
+                    waitMatcher = matcher;
+                    waitCount = args.getCount();
+                } finally {
+                    lock.unlock();
+                }
+            }
+            if (foundPosition != -1) {
                 break;
             }
             if (waitTime != -1) {
-                waitTime = (int) (args.getWaitTime() - (calendar.getTime().getTime() - startTime));
+                waitTime = (int) (args.getWaitTime()
+                        - TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startTime));
                 if (waitTime < 0) {
                     waitTime = 0;
                 }
             }
-            synchronized (sync) {
-                isReceived = !(lastBuffSize == receivedSize || receivedSize < nMinSize);
-            }
-            // Do not wait if there is data on the buffer...
-            if (!isReceived) {
-                if (waitTime == -1) {
-                    isReceived = receivedEvent.waitOne();
-                } else if (waitTime != 0) {
-                    isReceived = receivedEvent.waitOne(waitTime);
-                }
+            if (waitTime == -1) {
+                isReceived = receivedEvent.waitOne();
+            } else if (waitTime != 0) {
+                isReceived = receivedEvent.waitOne(waitTime);
+            } else {
+                isReceived = false;
             }
             if (this.exception != null) {
+                if (!lockFree) {
+                    lock.lock();
+                    try {
+                        waiting = false;
+                    } finally {
+                        lock.unlock();
+                    }
+                }
                 throw this.exception;
             }
             // If timeout occurred.
             if (!isReceived) {
                 isFound[0] = false;
-                // If we want to read all data.
-                if (args.getAllData()) {
-                    foundPosition = receivedSize;
-                } else {
-                    foundPosition = -1;
-                }
-                break;
-            }
-            synchronized (sync) {
-                lastBuffSize = receivedSize;
-                // Read more data, if not enough.
-                if (receivedSize < nMinSize) {
-                    continue;
+                if (lockFree) {
+                    updateLockFree();
+                    foundPosition = args.getAllData() ? receivedSize : -1;
+                    break;
                 }
-                // If only byte count matters.
-                if (nSize == 0) {
-                    foundPosition = args.getCount();
-                } else {
-                    int index;
-                    if (lastPosition != 0 && lastPosition < receivedSize) {
-                        index = lastPosition;
-                    } else {
-                        index = args.getCount();
-                    }
-                    // If terminator found.
-                    if (args.getEop() instanceof Array) {
-                        for (Object it : (Object[]) args.getEop()) {
-                            byte[] term = getAsByteArray(it);
-                            if (term.length != 1 && receivedSize - index < term.length) {
-                                index = receivedSize - term.length;
-                            }
-                            foundPosition = indexOf(receivedBuffer, term, index, receivedSize);
-                            if (foundPosition != -1) {
-                                break;
-                            }
-                        }
+                lock.lock();
+                try {
+                    waiting = false;
+                    // If we want to read all data.
+                    if (args.getAllData()) {
+                        foundPosition = receivedSize;
                     } else {
-                        if (terminator.length != 1 && receivedSize - index < terminator.length) {
-                            if ((receivedSize < terminator.length)) {
-                                isFound[0] = false;
-                                // If we want to read all data.
-                                if (args.getAllData()) {
-                                    foundPosition = receivedSize;
-                                } else {
-                                    foundPosition = -1;
-                                }
-                                break;
-                            }
-                            index = receivedSize - terminator.length;
-                        }
-                        foundPosition = indexOf(receivedBuffer, terminator, index, receivedSize);
-                    }
-                    lastPosition = receivedSize;
-                    if (foundPosition != -1) {
-                        foundPosition += terminator.length;
+                        foundPosition = -1;
                     }
+                } finally {
+                    lock.unlock();
                 }
+                break;
             }
-        } while (foundPosition == -1);
+        } while (true);
         // If terminator is not given read only bytes that are needed.
-        if (nSize == 0) {
+        if (matcher == null && frameDecoder == null) {
             foundPosition = args.getCount();
         }
         return foundPosition;
     }
 
+    /**
+     * Find end of the frame from the received data. Search is continued from
+     * the position where it ended last time.
+     *
+     * @param matcher
+     *            End of packet matcher or null if only byte count is used.
+     * @param count
+     *            Minimum amount of bytes.
+     * @return Frame size or -1 if frame is not complete.
+     */
+    private int findFrame(final GXEopMatcher matcher, final int count) {
+        if (frameDecoder != null) {
+            return decodeFrame();
+        }
+        // Read more data, if not enough.
+        if (receivedSize < count || receivedSize == 0) {
+            return -1;
+        }
+        // If only byte count matters.
+        if (matcher == null) {
+            return count;
+        }
+        if (lastMatcher != matcher || lastPosition < count || lastPosition > receivedSize) {
+            lastMatcher = matcher;
+            lastPosition = count;
+            lastState[0] = 0;
+            lastFound = false;
+        }
+        if (lastFound) {
+            // Frame is already found, for example when data was appended.
+            return lastPosition;
+        }
+        int foundPosition;
+        if (directBuffer == null) {
+            foundPosition = matcher.find(receivedBuffer, readPosition, lastPosition, receivedSize, lastState);
+        } else {
+            foundPosition = matcher.find(directBuffer, readPosition, lastPosition, receivedSize, lastState);
+        }
+        if (foundPosition == -1) {
+            lastPosition = receivedSize;
+        } else {
+            lastPosition = foundPosition;
+            lastFound = true;
+        }
+        return foundPosition;
+    }
+
+    /**
+     * Find end of the frame using frame decoder. Each received byte is given
+     * only once to the decoder.
+     *
+     * @return Frame size or -1 if frame is not complete.
+     */
+    private int decodeFrame() {
+        if (lastMatcher != null || lastPosition > receivedSize) {
+            lastMatcher = null;
+            resetSearch();
+        }
+        if (lastFound) {
+            return lastPosition;
+        }
+        if (receivedView == null) {
+            receivedView = createView();
+        }
+        int pos, count, found;
+        while (lastPosition != receivedSize) {
+            pos = readPosition + lastPosition;
+            if (pos >= getCapacity()) {
+                pos -= getCapacity();
+            }
+            // Data is given in two parts if it's wrapped.
+            count = Math.min(receivedSize - lastPosition, getCapacity() - pos);
+            receivedView.clear();
+            receivedView.position(pos);
+            receivedView.limit(pos + count);
+            int skipped = 0;
+            try {
+                found = frameDecoder.decode(receivedView);
+                if (found < -1 || found > count) {
+                    throw new IllegalStateException("Invalid frame size.");
+                }
+                if (found != -1) {
+                    skipped = frameDecoder.getSkipped();
+                    if (skipped < 0 || skipped >= lastPosition + found) {
+                        throw new IllegalStateException("Invalid frame size.");
+                    }
+                }
+            } catch (RuntimeException ex) {
+                // Frame boundary is lost, so received bytes are dropped.
+                skipReceived(receivedSize);
+                throw ex;
+            }
+            if (found == -1) {
+                lastPosition += count;
+            } else {
+                // Bytes before the frame are removed.
+                removeReceived(skipped);
+                lastPosition += found - skipped;
+                lastFound = true;
+                return lastPosition;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Get compiled end of packet matcher. Matcher is compiled only once for
+     * each end of packet.
+     *
+     * @param <T>
+     *            Reply type.
+     * @param args
+     *            Receive parameters.
+     * @return End of packet matcher or null if end of packet is not used.
+     */
+    private <T> GXEopMatcher getEopMatcher(final ReceiveParameters<T> args) {
+        if (args.getEop() == null) {
+            return null;
+        }
+        GXEopMatcher matcher = args.getEopMatcher();
+        if (matcher == null) {
+            matcher = eopMatcher;
+            if (matcher == null || !matcher.isCompiledFrom(args.getEop())) {
+                matcher = new GXEopMatcher(args.getEop());
+                eopMatcher = matcher;
+            }
+            args.setEopMatcher(matcher);
+        }
+        return matcher;
+    }
+
+    /**
+     * Lease received bytes without copying them.
+     *
+     * @param <T>
+     *            Reply type.
+     * @param args
+     *            Receive parameters.
+     * @param count
+     *            Amount of leased bytes.
+     * @return Read-only view to the leased bytes.
+     */
+    private <T> ByteBuffer leaseReceived(final ReceiveParameters<T> args, final int count) {
+        if (lockFree) {
+            throw new IllegalStateException("Leased reply is not used in lock-free mode.");
+        }
+        if (lease != null) {
+            throw new IllegalStateException("Leased reply is not released.");
+        }
+        if (args.getReply() != null) {
+            throw new IllegalArgumentException("Leased reply can't be appended.");
+        }
+        if (readPosition + count > getCapacity()) {
+            moveToBeginning();
+        }
+        if (directBuffer == null) {
+            lease = new GXReceiveLease(this, receivedBuffer, readPosition, count);
+        } else {
+            lease = new GXReceiveLease(this, directBuffer, readPosition, count);
+        }
+        args.setLease(lease);
+        return lease.getData();
+    }
+
     /**
      * Receive new data synchronously from the media.
+     * <p>
+     * If reply type is {@link ByteBuffer}, reply is leased from the receive
+     * buffer and it must be released before next leased reply is received.
+     * </p>
+     * <p>
+     * If frame decoder is set, one decoded frame is received and end of
+     * packet and count are not used.
+     * </p>
+     * <p>
+     * If peek is set, received frame is returned and it's left to the
+     * buffer. Next receive that uses the same end of packet doesn't search
+     * the frame again.
+     * </p>
      *
      * @param <T>
      *            Used media component.
@@ -496,68 +1753,520 @@ public class GXSynchronousMediaBase {
      * @return Is new data received.
      */
     public final <T> boolean receive(final ReceiveParameters<T> args) {
-        if (args.getEop() == null && args.getCount() == 0) {
+        if (frameDecoder == null && args.getEop() == null && args.getCount() == 0) {
             throw new IllegalArgumentException("Either Count or Eop must be set.");
         }
         boolean[] retValue = new boolean[1];
-        int foundPosition = findData(args, retValue);
+        int foundPosition;
         Object data = null;
+        do {
+            foundPosition = findData(args, retValue);
+            if (foundPosition == -1) {
+                break;
+            }
+            if (lockFree) {
+                int size = receivedSize;
+                data = readFrame(args, foundPosition);
+                readLockFree(size);
+                break;
+            }
+            lock.lock();
+            try {
+                if (retValue[0]) {
+                    // Appending thread can drop the oldest bytes after the
+                    // frame was found. Found frame is returned immediately.
+                    GXEopMatcher matcher = null;
+                    if (frameDecoder == null) {
+                        matcher = getEopMatcher(args);
+                    }
+                    foundPosition = findFrame(matcher, args.getCount());
+                }
+                if (foundPosition != -1) {
+                    data = readFrame(args, foundPosition);
+                }
+            } finally {
+                lock.unlock();
+            }
+        } while (foundPosition == -1);
         if (foundPosition != -1) {
+            addReply(args, data);
+        }
+        return retValue[0];
+    }
+
+    /**
+     * Receive all complete frames at once. If there are no complete frames,
+     * the first frame is waited as in receive. After that all complete
+     * frames are read while received data is locked once.
+     * <p>
+     * Reply of the receive parameters is not changed and count is not reset,
+     * so fixed size frames can be read using count. Leased replies and peek
+     * are not used.
+     * </p>
+     *
+     * @param <T>
+     *            Reply type.
+     * @param args
+     *            Receive parameters.
+     * @param frames
+     *            Received frames are added to this list.
+     * @return Amount of received frames.
+     */
+    public final <T> int receiveAll(final ReceiveParameters<T> args, final List<? super T> frames) {
+        if (args.getReplyType() == ByteBuffer.class) {
+            throw new IllegalArgumentException("Leased reply can't be used when all frames are received.");
+        }
+        return receiveFrames(args, frames, null);
+    }
+
+    /**
+     * Receive all complete frames at once without copying them. If there are
+     * no complete frames, the first frame is waited as in receive. After that
+     * all complete frames are given to the listener while received data is
+     * locked once.
+     * <p>
+     * Reply type and reply of the receive parameters are not used and count
+     * is not reset.
+     * </p>
+     *
+     * @param args
+     *            Receive parameters.
+     * @param listener
+     *            Listener that handles received frames.
+     * @return Amount of received frames.
+     */
+    public final int receiveAll(final ReceiveParameters<?> args, final IGXFrameListener listener) {
+        if (listener == null) {
+            throw new IllegalArgumentException("Invalid listener.");
+        }
+        return receiveFrames(args, null, listener);
+    }
+
+    /**
+     * Receive all complete frames.
+     *
+     * @param <T>
+     *            Reply type.
+     * @param args
+     *            Receive parameters.
+     * @param frames
+     *            Received frames are added to this list if listener is not
+     *            used.
+     * @param listener
+     *            Listener that handles received frames or null.
+     * @return Amount of received frames.
+     */
+    private <T> int receiveFrames(final ReceiveParameters<T> args, final List<? super T> frames,
+            final IGXFrameListener listener) {
+        if (frameDecoder == null && args.getEop() == null && args.getCount() == 0) {
+            throw new IllegalArgumentException("Either Count or Eop must be set.");
+        }
+        if (args.getPeek()) {
+            throw new IllegalArgumentException("Peek can't be used when all frames are received.");
+        }
+        boolean[] retValue = new boolean[1];
+        if (findData(args, retValue) == -1 || !retValue[0]) {
+            return 0;
+        }
+        return readAvailable(args, frames, listener);
+    }
+
+    /**
+     * Read all complete frames that are already received without waiting.
+     *
+     * @param <T>
+     *            Reply type.
+     * @param args
+     *            Receive parameters.
+     * @param frames
+     *            Received frames are added to this list if listener is not
+     *            used.
+     * @param listener
+     *            Listener that handles received frames or null.
+     * @return Amount of read frames.
+     */
+    final <T> int readAvailable(final ReceiveParameters<T> args, final List<? super T> frames,
+            final IGXFrameListener listener) {
+        GXEopMatcher matcher = null;
+        if (frameDecoder == null) {
+            matcher = getEopMatcher(args);
+        }
+        int count;
+        if (lockFree) {
+            updateLockFree();
+            int size = receivedSize;
+            try {
+                count = readFrames(args, matcher, frames, listener);
+            } finally {
+                readLockFree(size);
+            }
+        } else {
+            lock.lock();
+            try {
+                count = readFrames(args, matcher, frames, listener);
+            } finally {
+                lock.unlock();
+            }
+        }
+        return count;
+    }
 
-            synchronized (sync) {
-                if (args.getAllData()) {
-                    // If all data is copied.
-                    foundPosition = receivedSize;
+    /**
+     * Read all complete frames from the received data.
+     *
+     * @param <T>
+     *            Reply type.
+     * @param args
+     *            Receive parameters.
+     * @param matcher
+     *            End of packet matcher or null if it's not used.
+     * @param frames
+     *            Received frames are added to this list if listener is not
+     *            used.
+     * @param listener
+     *            Listener that handles received frames or null.
+     * @return Amount of read frames.
+     */
+    @SuppressWarnings("unchecked")
+    private <T> int readFrames(final ReceiveParameters<T> args, final GXEopMatcher matcher,
+            final List<? super T> frames, final IGXFrameListener listener) {
+        int count = 0;
+        int foundPosition;
+        while ((foundPosition = findFrame(matcher, args.getCount())) != -1) {
+            if (listener == null) {
+                frames.add((T) readFrame(args, foundPosition));
+            } else {
+                try {
+                    listener.onFrame(getFrame(foundPosition));
+                } finally {
+                    // Frame is removed even if the listener fails.
+                    skipReceived(foundPosition);
                 }
-                if (foundPosition != 0) {
-                    // Convert bytes to object.
-                    byte[] tmp = new byte[foundPosition];
-                    System.arraycopy(receivedBuffer, 0, tmp, 0, foundPosition);
-                    int[] readBytes = new int[1];
-                    data = byteArrayToObject(tmp, args.getReplyType(), readBytes);
-                    // Remove read data.
-                    receivedSize -= foundPosition;
-                    // Received size can go less than zero if we have received
-                    // data
-                    // and we try to read more.
-                    if (receivedSize < 0) {
-                        receivedSize = 0;
+            }
+            ++count;
+        }
+        return count;
+    }
+
+    /**
+     * Get read-only view to the frame in the beginning of the received data.
+     *
+     * @param count
+     *            Frame size.
+     * @return Frame between position and limit of the buffer.
+     */
+    private ByteBuffer getFrame(final int count) {
+        if (readPosition + count > getCapacity()) {
+            if (lockFree || leasedSize != 0) {
+                // Data can't be moved, so wrapped frame is copied.
+                byte[] tmp = new byte[count];
+                copyReceived(0, tmp, 0, count);
+                return ByteBuffer.wrap(tmp).asReadOnlyBuffer();
+            }
+            moveToBeginning();
+        }
+        if (readOnlyView == null) {
+            readOnlyView = createView().asReadOnlyBuffer();
+        }
+        readOnlyView.clear();
+        readOnlyView.position(readPosition);
+        readOnlyView.limit(readPosition + count);
+        return readOnlyView;
+    }
+
+    /**
+     * Receive new data asynchronously from the media. Returned future is
+     * completed by the thread that appends the data, or by the shared timeout
+     * wheel when wait time of the receive parameters elapses. Future
+     * completes exceptionally with {@link TimeoutException} if data is not
+     * received in given time.
+     * <p>
+     * Asynchronous receives are completed in the order they are made. If the
+     * caller cancels or completes the future, the receive doesn't take any
+     * data. Synchronous and asynchronous receives should not be used at the same
+     * time.
+     * </p>
+     *
+     * @param <T>
+     *            Reply type.
+     * @param args
+     *            Receive parameters.
+     * @return Future that is completed with the reply.
+     */
+    public final <T> CompletableFuture<T> receiveAsync(final ReceiveParameters<T> args) {
+        if (lockFree) {
+            throw new IllegalStateException("Asynchronous receive is not used in lock-free mode.");
+        }
+        if (frameDecoder == null && args.getEop() == null && args.getCount() == 0) {
+            throw new IllegalArgumentException("Either Count or Eop must be set.");
+        }
+        GXEopMatcher matcher = null;
+        if (frameDecoder == null) {
+            matcher = getEopMatcher(args);
+        }
+        final GXPendingReceive<T> it = new GXPendingReceive<T>(args, matcher);
+        // Future can be completed also by the caller, for example cancelled.
+        it.getFuture().whenComplete(new BiConsumer<T, Throwable>() {
+            @Override
+            public void accept(final T value, final Throwable ex) {
+                removeReceive(it);
+            }
+        });
+        lock.lock();
+        try {
+            pendingReceives.add(it);
+            if (args.getWaitTime() > 0) {
+                it.setTimeout(GXTimeoutWheel.getInstance().schedule(new Runnable() {
+                    @Override
+                    public void run() {
+                        timeoutReceive(it);
                     }
-                    if (receivedSize != 0) {
-                        System.arraycopy(receivedBuffer, foundPosition, receivedBuffer, 0, receivedSize);
+                }, args.getWaitTime()));
+            }
+        } finally {
+            lock.unlock();
+        }
+        // Data might be already received.
+        completeReceives();
+        return it.getFuture();
+    }
+
+    /**
+     * Complete asynchronous receives that have their data received.
+     */
+    private void completeReceives() {
+        GXPendingReceive<?> it;
+        do {
+            lock.lock();
+            try {
+                it = pendingReceives.peek();
+                // Receives that the caller has cancelled don't take the data.
+                while (it != null && it.getFuture().isDone()) {
+                    pendingReceives.poll();
+                    it = pendingReceives.peek();
+                }
+                if (it != null) {
+                    try {
+                        int foundPosition = findFrame(it.getMatcher(), it.getArgs().getCount());
+                        if (foundPosition == -1) {
+                            it = null;
+                        } else {
+                            pendingReceives.poll();
+                            it.setData(readFrame(it.getArgs(), foundPosition));
+                        }
+                    } catch (RuntimeException ex) {
+                        pendingReceives.remove(it);
+                        it.setException(ex);
                     }
                 }
+            } finally {
+                lock.unlock();
             }
-            // Reset count after read.
-            args.setCount(0);
-            // Append data.
-            int oldReplySize;
-            if (args.getReply() == null) {
-                args.setReply(data);
-            } else {
-                if (args.getReply() instanceof String) {
-                    String str = (String) args.getReply();
-                    str += (String) data;
-                    data = str;
-                    args.setReply(data);
-                } else if (args.getReply() instanceof byte[]) {
-                    byte[] oldArray = (byte[]) args.getReply();
-                    byte[] newArray = (byte[]) data;
-                    if (newArray != null) {
-                        oldReplySize = Array.getLength(oldArray);
-                        int len = oldReplySize + Array.getLength(newArray);
-                        byte[] arr = new byte[len];
-                        // Copy old values.
-                        System.arraycopy((byte[]) args.getReply(), 0, arr, 0, Array.getLength(oldArray));
-                        // Copy new values.
-                        System.arraycopy(newArray, 0, arr, Array.getLength(oldArray), Array.getLength(newArray));
-                        args.setReply(arr);
-                    }
-                } else {
-                    throw new RuntimeException("Invalid reply type");
+            if (it != null) {
+                it.complete();
+            }
+        } while (it != null);
+    }
+
+    /**
+     * Remove completed asynchronous receive, so it doesn't take the data.
+     *
+     * @param it
+     *            Completed receive.
+     */
+    private void removeReceive(final GXPendingReceive<?> it) {
+        lock.lock();
+        try {
+            pendingReceives.remove(it);
+        } finally {
+            lock.unlock();
+        }
+        it.cancelTimeout();
+    }
+
+    /**
+     * Asynchronous receive timeout has elapsed.
+     *
+     * @param it
+     *            Timed out receive.
+     */
+    private void timeoutReceive(final GXPendingReceive<?> it) {
+        lock.lock();
+        try {
+            if (!pendingReceives.remove(it)) {
+                // Receive is already completed.
+                return;
+            }
+            // If we want to read all data.
+            if (it.getArgs().getAllData() && receivedSize != 0) {
+                it.setData(readFrame(it.getArgs(), receivedSize));
+            }
+        } finally {
+            lock.unlock();
+        }
+        it.complete();
+    }
+
+    /**
+     * Read found frame from the received data. This is called while
+     * synchronous object is locked.
+     *
+     * @param <T>
+     *            Reply type.
+     * @param args
+     *            Receive parameters.
+     * @param position
+     *            Position where end of packet was found.
+     * @return Read data.
+     */
+    private <T> Object readFrame(final ReceiveParameters<T> args, final int position) {
+        Object data = null;
+        int foundPosition = position;
+        if (args.getAllData()) {
+            // If all data is copied.
+            foundPosition = receivedSize;
+        }
+        if (foundPosition > receivedSize) {
+            // Received size can be less than found position if we
+            // have received data and we try to read more.
+            foundPosition = receivedSize;
+        }
+        if (foundPosition != 0) {
+            if (args.getReplyType() == ByteBuffer.class) {
+                if (args.getPeek()) {
+                    throw new IllegalArgumentException("Peeked reply can't be leased.");
                 }
+                data = leaseReceived(args, foundPosition);
+            } else if (args.getReplyType() == String.class) {
+                data = decodeReceived(args, foundPosition);
+            } else {
+                data = decodeValue(args.getDecoder(), foundPosition);
             }
+            if (args.getPeek()) {
+                // Data is left to the buffer and found end of packet is
+                // remembered, so it's not searched again.
+                return data;
+            }
+            skipReceived(foundPosition);
         }
-        return retValue[0];
+        return data;
+    }
+
+    /**
+     * Convert received bytes to the reply object. Bytes are decoded straight
+     * from the receive buffer.
+     *
+     * @param decoder
+     *            Reply decoder.
+     * @param count
+     *            Amount of decoded bytes.
+     * @return Reply value.
+     */
+    private Object decodeValue(final IGXReplyDecoder<?> decoder, final int count) {
+        if (readPosition + count > getCapacity()) {
+            if (lockFree || leasedSize != 0) {
+                // Data can't be moved, so wrapped value is copied.
+                byte[] tmp = new byte[count];
+                copyReceived(0, tmp, 0, count);
+                return decoder.decode(ByteBuffer.wrap(tmp));
+            }
+            moveToBeginning();
+        }
+        if (receivedView == null) {
+            receivedView = createView();
+        }
+        receivedView.clear();
+        receivedView.position(readPosition);
+        receivedView.limit(readPosition + count);
+        return decoder.decode(receivedView);
+    }
+
+    /**
+     * Decode received bytes to string without copying them.
+     *
+     * @param <T>
+     *            Reply type.
+     * @param args
+     *            Receive parameters.
+     * @param count
+     *            Amount of decoded bytes.
+     * @return Decoded string.
+     */
+    private <T> String decodeReceived(final ReceiveParameters<T> args, final int count) {
+        GXTextDecoder decoder = args.getTextDecoder(charset);
+        if (receivedView == null) {
+            receivedView = createView();
+        }
+        // Data is decoded in two parts if it's wrapped.
+        int first = Math.min(count, getCapacity() - readPosition);
+        receivedView.clear();
+        receivedView.position(readPosition);
+        receivedView.limit(readPosition + first);
+        decoder.decode(receivedView);
+        if (first != count) {
+            receivedView.clear();
+            receivedView.limit(count - first);
+            decoder.decode(receivedView);
+        }
+        return decoder.getText();
+    }
+
+    /**
+     * Remove read data. Only read position is moved.
+     *
+     * @param count
+     *            Amount of removed bytes.
+     */
+    private void skipReceived(final int count) {
+        removeReceived(count);
+        // Search is started from the beginning of the next frame.
+        resetSearch();
+    }
+
+    /**
+     * Remove bytes from the beginning of the received data. Search state is
+     * not changed.
+     *
+     * @param count
+     *            Amount of removed bytes.
+     */
+    private void removeReceived(final int count) {
+        if (count == 0) {
+            return;
+        }
+        if (isLeased()) {
+            // Consumed bytes are kept until the lease is released.
+            leasedSize += count;
+        }
+        receivedSize -= count;
+        if (receivedSize == 0 && leasedSize == 0) {
+            readPosition = 0;
+            releaseBuffer();
+        } else {
+            readPosition += count;
+            if (readPosition >= getCapacity()) {
+                readPosition -= getCapacity();
+            }
+        }
+        if (maxBufferSize != 0 && !lockFree) {
+            spaceAvailable.signalAll();
+        }
+    }
+
+    /**
+     * Append read data to the reply.
+     *
+     * @param <T>
+     *            Reply type.
+     * @param args
+     *            Receive parameters.
+     * @param value
+     *            Read data.
+     */
+    static <T> void addReply(final ReceiveParameters<T> args, final Object value) {
+        // Reset count after read.
+        args.setCount(0);
+        // Append data.
+        args.appendReply(value);
     }
 }
\ No newline at end of file
@@ -0,0 +1,159 @@
+//
+// --------------------------------------------------------------------------
+//  Gurux Ltd
+//
+//
+//
+// Filename:        $HeadURL$
+//
+// Version:         $Revision$,
+//                  $Date$
+//                  $Author$
+//
+// Copyright (c) Gurux Ltd
+//
+//---------------------------------------------------------------------------
+//
+//  DESCRIPTION
+//
+// This file is a part of Gurux Device Framework.
+//
+// Gurux Device Framework is Open Source software; you can redistribute it
+// and/or modify it under the terms of the GNU General Public License
+// as published by the Free Software Foundation; version 2 of the License.
+// Gurux Device Framework is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+// See the GNU General Public License for more details.
+//
+// More information of Gurux products: http://www.gurux.org
+//
+// This code is licensed under the GNU General Public License v2.
+// Full text may be retrieved at http://www.gnu.org/licenses/gpl-2.0.txt
+//---------------------------------------------------------------------------
+
+package gurux.common;
+
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+
+/**
+ * Text decoder that decodes received bytes straight from the receive buffer.
+ * Decoder and character buffer are reused. Bytes of a multi-byte character
+ * that is split between two reads are kept until the rest of the character
+ * is received.
+ *
+ * @author Gurux Ltd.
+ */
+final class GXTextDecoder {
+    /**
+     * Maximum amount of bytes of an incomplete character.
+     */
+    private static final int MAX_PENDING = 16;
+
+    /**
+     * Used decoder.
+     */
+    private final CharsetDecoder decoder;
+    /**
+     * Decoded characters.
+     */
+    private CharBuffer chars = CharBuffer.allocate(64);
+    /**
+     * Bytes of an incomplete character.
+     */
+    private final ByteBuffer pending = ByteBuffer.allocate(MAX_PENDING);
+
+    /**
+     * Constructor.
+     *
+     * @param charset
+     *            Used character set.
+     */
+    GXTextDecoder(final Charset charset) {
+        decoder = charset.newDecoder().onMalformedInput(CodingErrorAction.REPLACE)
+                .onUnmappableCharacter(CodingErrorAction.REPLACE);
+    }
+
+    /**
+     * @return Used character set.
+     */
+    Charset getCharset() {
+        return decoder.charset();
+    }
+
+    /**
+     * Decode bytes between position and limit of the buffer.
+     *
+     * @param data
+     *            Decoded bytes.
+     */
+    void decode(final ByteBuffer data) {
+        // Complete the character that was split in the last read.
+        while (pending.position() != 0 && data.hasRemaining()) {
+            pending.put(data.get());
+            pending.flip();
+            decode(pending, false);
+            pending.compact();
+            if (!pending.hasRemaining()) {
+                // Invalid bytes are replaced.
+                pending.flip();
+                decode(pending, true);
+                pending.clear();
+            }
+        }
+        if (data.hasRemaining()) {
+            decode(data, false);
+            // Bytes of the incomplete character are kept.
+            while (data.hasRemaining()) {
+                pending.put(data.get());
+            }
+        }
+    }
+
+    /**
+     * Decode bytes to the character buffer.
+     *
+     * @param data
+     *            Decoded bytes.
+     * @param endOfInput
+     *            Are incomplete bytes handled as invalid.
+     */
+    private void decode(final ByteBuffer data, final boolean endOfInput) {
+        CoderResult ret;
+        do {
+            ret = decoder.decode(data, chars, endOfInput);
+            if (ret.isOverflow()) {
+                CharBuffer tmp = CharBuffer.allocate(2 * chars.capacity());
+                chars.flip();
+                tmp.put(chars);
+                chars = tmp;
+            }
+        } while (ret.isOverflow());
+    }
+
+    /**
+     * Get decoded text. Character buffer is cleared.
+     *
+     * @return Decoded text.
+     */
+    String getText() {
+        chars.flip();
+        String str = chars.toString();
+        chars.clear();
+        return str;
+    }
+
+    /**
+     * Reset decoder. Bytes of an incomplete character are removed.
+     */
+    void reset() {
+        decoder.reset();
+        pending.clear();
+        chars.clear();
+    }
+}
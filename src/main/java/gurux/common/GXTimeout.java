@@ -0,0 +1,157 @@
+//
+// --------------------------------------------------------------------------
+//  Gurux Ltd
+//
+//
+//
+// Filename:        $HeadURL$
+//
+// Version:         $Revision$,
+//                  $Date$
+//                  $Author$
+//
+// Copyright (c) Gurux Ltd
+//
+//---------------------------------------------------------------------------
+//
+//  DESCRIPTION
+//
+// This file is a part of Gurux Device Framework.
+//
+// Gurux Device Framework is Open Source software; you can redistribute it
+// and/or modify it under the terms of the GNU General Public License
+// as published by the Free Software Foundation; version 2 of the License.
+// Gurux Device Framework is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+// See the GNU General Public License for more details.
+//
+// More information of Gurux products: http://www.gurux.org
+//
+// This code is licensed under the GNU General Public License v2.
+// Full text may be retrieved at http://www.gnu.org/licenses/gpl-2.0.txt
+//---------------------------------------------------------------------------
+
+package gurux.common;
+
+/**
+ * Timeout that is scheduled to the timeout wheel.
+ *
+ * @author Gurux Ltd.
+ * @see GXTimeoutWheel
+ */
+final class GXTimeout {
+    /**
+     * Wheel where timeout is scheduled.
+     */
+    private final GXTimeoutWheel wheel;
+    /**
+     * Task that is run when timeout expires.
+     */
+    private final Runnable task;
+    /**
+     * How many times the wheel must turn before the timeout expires.
+     */
+    private long rounds;
+    /**
+     * Bucket index in the wheel or -1 if timeout is not in the wheel.
+     */
+    private int bucket = -1;
+    /**
+     * Previous timeout in the same bucket.
+     */
+    private GXTimeout previous;
+    /**
+     * Next timeout in the same bucket.
+     */
+    private GXTimeout next;
+
+    /**
+     * Constructor.
+     *
+     * @param owner
+     *            Wheel where timeout is scheduled.
+     * @param value
+     *            Task that is run when timeout expires.
+     */
+    GXTimeout(final GXTimeoutWheel owner, final Runnable value) {
+        wheel = owner;
+        task = value;
+    }
+
+    /**
+     * Cancel the timeout. Task is not run if it's not already started.
+     */
+    void cancel() {
+        wheel.cancel(this);
+    }
+
+    /**
+     * @return Task that is run when timeout expires.
+     */
+    Runnable getTask() {
+        return task;
+    }
+
+    /**
+     * @return How many times the wheel must turn before the timeout expires.
+     */
+    long getRounds() {
+        return rounds;
+    }
+
+    /**
+     * @param value
+     *            How many times the wheel must turn before the timeout
+     *            expires.
+     */
+    void setRounds(final long value) {
+        rounds = value;
+    }
+
+    /**
+     * @return Bucket index in the wheel or -1 if timeout is not in the wheel.
+     */
+    int getBucket() {
+        return bucket;
+    }
+
+    /**
+     * @param value
+     *            Bucket index in the wheel or -1 if timeout is not in the
+     *            wheel.
+     */
+    void setBucket(final int value) {
+        bucket = value;
+    }
+
+    /**
+     * @return Previous timeout in the same bucket.
+     */
+    GXTimeout getPrevious() {
+        return previous;
+    }
+
+    /**
+     * @param value
+     *            Previous timeout in the same bucket.
+     */
+    void setPrevious(final GXTimeout value) {
+        previous = value;
+    }
+
+    /**
+     * @return Next timeout in the same bucket.
+     */
+    GXTimeout getNext() {
+        return next;
+    }
+
+    /**
+     * @param value
+     *            Next timeout in the same bucket.
+     */
+    void setNext(final GXTimeout value) {
+        next = value;
+    }
+}
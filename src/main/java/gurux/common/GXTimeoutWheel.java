@@ -0,0 +1,293 @@
+//
+// --------------------------------------------------------------------------
+//  Gurux Ltd
+//
+//
+//
+// Filename:        $HeadURL$
+//
+// Version:         $Revision$,
+//                  $Date$
+//                  $Author$
+//
+// Copyright (c) Gurux Ltd
+//
+//---------------------------------------------------------------------------
+//
+//  DESCRIPTION
+//
+// This file is a part of Gurux Device Framework.
+//
+// Gurux Device Framework is Open Source software; you can redistribute it
+// and/or modify it under the terms of the GNU General Public License
+// as published by the Free Software Foundation; version 2 of the License.
+// Gurux Device Framework is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+// See the GNU General Public License for more details.
+//
+// More information of Gurux products: http://www.gurux.org
+//
+// This code is licensed under the GNU General Public License v2.
+// Full text may be retrieved at http://www.gnu.org/licenses/gpl-2.0.txt
+//---------------------------------------------------------------------------
+
+package gurux.common;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.LockSupport;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Hashed timeout wheel that is shared by all synchronous media components.
+ * Scheduling and canceling a timeout takes constant time, so thousands of
+ * receive deadlines can be active at the same time. Time is measured with
+ * System.nanoTime, so system clock changes don't affect the timeouts.
+ * <p>
+ * Timeouts are handled by one daemon thread with the resolution of one tick.
+ * Timeout never expires before its deadline.
+ * </p>
+ *
+ * @author Gurux Ltd.
+ */
+final class GXTimeoutWheel {
+    /**
+     * Default tick duration in milliseconds.
+     */
+    private static final int DEFAULT_TICK = 10;
+    /**
+     * Default amount of buckets in the wheel.
+     */
+    private static final int DEFAULT_SIZE = 512;
+
+    /**
+     * Shared timeout wheel.
+     */
+    private static GXTimeoutWheel instance;
+
+    /**
+     * Lock that protects the wheel.
+     */
+    private final ReentrantLock lock = new ReentrantLock();
+    /**
+     * Condition that is signaled when the first timeout is added to the empty
+     * wheel.
+     */
+    private final Condition added = lock.newCondition();
+    /**
+     * Buckets of the wheel.
+     */
+    private final GXTimeout[] buckets;
+    /**
+     * Mask that is used to get bucket index from the tick.
+     */
+    private final int mask;
+    /**
+     * Tick duration in nanoseconds.
+     */
+    private final long tickDuration;
+    /**
+     * Time when the wheel was started.
+     */
+    private final long startTime;
+    /**
+     * Next handled tick.
+     */
+    private long tick = 1;
+    /**
+     * Amount of timeouts in the wheel.
+     */
+    private int count;
+    /**
+     * Thread that handles timeouts.
+     */
+    private Thread worker;
+
+    /**
+     * Constructor.
+     *
+     * @param tickMs
+     *            Tick duration in milliseconds.
+     * @param size
+     *            Amount of buckets in the wheel. Size must be a power of two.
+     */
+    GXTimeoutWheel(final int tickMs, final int size) {
+        if (tickMs < 1) {
+            throw new IllegalArgumentException("Invalid tick duration.");
+        }
+        if (size < 1 || (size & (size - 1)) != 0) {
+            throw new IllegalArgumentException("Invalid wheel size.");
+        }
+        buckets = new GXTimeout[size];
+        mask = size - 1;
+        tickDuration = TimeUnit.MILLISECONDS.toNanos(tickMs);
+        startTime = System.nanoTime();
+    }
+
+    /**
+     * Get shared timeout wheel.
+     *
+     * @return Timeout wheel.
+     */
+    static GXTimeoutWheel getInstance() {
+        synchronized (GXTimeoutWheel.class) {
+            if (instance == null) {
+                instance = new GXTimeoutWheel(DEFAULT_TICK, DEFAULT_SIZE);
+            }
+            return instance;
+        }
+    }
+
+    /**
+     * Schedule new timeout.
+     *
+     * @param task
+     *            Task that is run when timeout expires.
+     * @param delay
+     *            Delay in milliseconds.
+     * @return Scheduled timeout.
+     */
+    GXTimeout schedule(final Runnable task, final long delay) {
+        GXTimeout timeout = new GXTimeout(this, task);
+        long deadline = System.nanoTime() - startTime + TimeUnit.MILLISECONDS.toNanos(delay);
+        // Timeout expires on the first tick after the deadline.
+        long expires = (deadline + tickDuration - 1) / tickDuration;
+        lock.lock();
+        try {
+            if (count == 0) {
+                // Ticks of the empty wheel are skipped.
+                tick = Math.max(tick, (System.nanoTime() - startTime) / tickDuration);
+            }
+            if (expires < tick) {
+                expires = tick;
+            }
+            timeout.setRounds((expires - tick) / buckets.length);
+            add(timeout, (int) (expires & mask));
+            ++count;
+            if (worker == null) {
+                worker = new Thread(new Runnable() {
+                    @Override
+                    public void run() {
+                        handleTimeouts();
+                    }
+                }, "Gurux timeout wheel");
+                worker.setDaemon(true);
+                worker.start();
+            } else if (count == 1) {
+                added.signal();
+            }
+        } finally {
+            lock.unlock();
+        }
+        return timeout;
+    }
+
+    /**
+     * Cancel the timeout.
+     *
+     * @param timeout
+     *            Canceled timeout.
+     */
+    void cancel(final GXTimeout timeout) {
+        lock.lock();
+        try {
+            if (timeout.getBucket() != -1) {
+                remove(timeout);
+                --count;
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Add timeout to the bucket.
+     *
+     * @param timeout
+     *            Added timeout.
+     * @param index
+     *            Bucket index.
+     */
+    private void add(final GXTimeout timeout, final int index) {
+        GXTimeout first = buckets[index];
+        timeout.setBucket(index);
+        timeout.setPrevious(null);
+        timeout.setNext(first);
+        if (first != null) {
+            first.setPrevious(timeout);
+        }
+        buckets[index] = timeout;
+    }
+
+    /**
+     * Remove timeout from its bucket.
+     *
+     * @param timeout
+     *            Removed timeout.
+     */
+    private void remove(final GXTimeout timeout) {
+        if (timeout.getPrevious() == null) {
+            buckets[timeout.getBucket()] = timeout.getNext();
+        } else {
+            timeout.getPrevious().setNext(timeout.getNext());
+        }
+        if (timeout.getNext() != null) {
+            timeout.getNext().setPrevious(timeout.getPrevious());
+        }
+        timeout.setPrevious(null);
+        timeout.setNext(null);
+        timeout.setBucket(-1);
+    }
+
+    /**
+     * Handle expired timeouts. This is run by the worker thread.
+     */
+    private void handleTimeouts() {
+        GXTimeout expired, it, next;
+        long wait;
+        while (true) {
+            expired = null;
+            lock.lock();
+            try {
+                // Wait until there are timeouts.
+                while (count == 0) {
+                    added.awaitUninterruptibly();
+                }
+                wait = startTime + tick * tickDuration - System.nanoTime();
+                if (wait <= 0) {
+                    it = buckets[(int) (tick & mask)];
+                    while (it != null) {
+                        next = it.getNext();
+                        if (it.getRounds() == 0) {
+                            remove(it);
+                            --count;
+                            it.setNext(expired);
+                            expired = it;
+                        } else {
+                            it.setRounds(it.getRounds() - 1);
+                        }
+                        it = next;
+                    }
+                    ++tick;
+                }
+            } finally {
+                lock.unlock();
+            }
+            if (wait > 0) {
+                LockSupport.parkNanos(this, wait);
+            }
+            // Expired tasks are run without holding the lock.
+            while (expired != null) {
+                next = expired.getNext();
+                expired.setNext(null);
+                try {
+                    expired.getTask().run();
+                } catch (RuntimeException ex) {
+                    // Timeout task is not allowed to stop the wheel.
+                }
+                expired = next;
+            }
+        }
+    }
+}
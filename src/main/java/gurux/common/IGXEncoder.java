@@ -0,0 +1,69 @@
+//
+// --------------------------------------------------------------------------
+//  Gurux Ltd
+//
+//
+//
+// Filename:        $HeadURL$
+//
+// Version:         $Revision$,
+//                  $Date$
+//                  $Author$
+//
+// Copyright (c) Gurux Ltd
+//
+//---------------------------------------------------------------------------
+//
+//  DESCRIPTION
+//
+// This file is a part of Gurux Device Framework.
+//
+// Gurux Device Framework is Open Source software; you can redistribute it
+// and/or modify it under the terms of the GNU General Public License
+// as published by the Free Software Foundation; version 2 of the License.
+// Gurux Device Framework is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+// See the GNU General Public License for more details.
+//
+// More information of Gurux products: http://www.gurux.org
+//
+// This code is licensed under the GNU General Public License v2.
+// Full text may be retrieved at http://www.gnu.org/licenses/gpl-2.0.txt
+//---------------------------------------------------------------------------
+
+package gurux.common;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Encoder converts data object to bytes that are sent to the media. Encoders
+ * are registered to {@link GXCodecRegistry} and value is written straight to
+ * the output buffer, so new byte array is not needed for each send.
+ *
+ * @param <T>
+ *            Data type.
+ * @author Gurux Ltd.
+ * @see GXCodecRegistry#registerEncoder
+ */
+public interface IGXEncoder<T> {
+    /**
+     * Get amount of bytes the value takes when it's encoded.
+     *
+     * @param value
+     *            Encoded value.
+     * @return Size of the encoded value in bytes.
+     */
+    int getSize(T value);
+
+    /**
+     * Encode value to the buffer. Bytes are written starting from the
+     * position of the buffer and position is moved after the written bytes.
+     *
+     * @param value
+     *            Encoded value.
+     * @param target
+     *            Output buffer.
+     */
+    void encode(T value, ByteBuffer target);
+}
@@ -0,0 +1,75 @@
+//
+// --------------------------------------------------------------------------
+//  Gurux Ltd
+//
+//
+//
+// Filename:        $HeadURL$
+//
+// Version:         $Revision$,
+//                  $Date$
+//                  $Author$
+//
+// Copyright (c) Gurux Ltd
+//
+//---------------------------------------------------------------------------
+//
+//  DESCRIPTION
+//
+// This file is a part of Gurux Device Framework.
+//
+// Gurux Device Framework is Open Source software; you can redistribute it
+// and/or modify it under the terms of the GNU General Public License
+// as published by the Free Software Foundation; version 2 of the License.
+// Gurux Device Framework is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+// See the GNU General Public License for more details.
+//
+// More information of Gurux products: http://www.gurux.org
+//
+// This code is licensed under the GNU General Public License v2.
+// Full text may be retrieved at http://www.gnu.org/licenses/gpl-2.0.txt
+//---------------------------------------------------------------------------
+
+package gurux.common;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Frame decoder is used to find frames from the received data when the frame
+ * can't be found using end of packet or count of bytes.
+ * <p>
+ * Received data is given to the decoder only once. Decoder must keep the
+ * state of the frame between calls until the frame is complete or the
+ * decoder is reset.
+ * </p>
+ *
+ * @author Gurux Ltd.
+ * @see GXSynchronousMediaBase#setFrameDecoder
+ */
+public interface IGXFrameDecoder {
+    /**
+     * Decode received bytes. Bytes between position and limit of the buffer
+     * follow the bytes that were given in previous calls for the same frame.
+     *
+     * @param data
+     *            Received bytes.
+     * @return Amount of bytes from the position of the buffer that complete
+     *         the frame, or -1 if more data is needed.
+     */
+    int decode(ByteBuffer data);
+
+    /**
+     * Get amount of bytes in the beginning of the completed frame that are
+     * not part of the frame. Bytes are removed before the frame is read.
+     *
+     * @return Amount of skipped bytes.
+     */
+    int getSkipped();
+
+    /**
+     * Reset decoder. Next given byte is the first byte of a new frame.
+     */
+    void reset();
+}
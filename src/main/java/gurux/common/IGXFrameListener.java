@@ -0,0 +1,55 @@
+//
+// --------------------------------------------------------------------------
+//  Gurux Ltd
+//
+//
+//
+// Filename:        $HeadURL$
+//
+// Version:         $Revision$,
+//                  $Date$
+//                  $Author$
+//
+// Copyright (c) Gurux Ltd
+//
+//---------------------------------------------------------------------------
+//
+//  DESCRIPTION
+//
+// This file is a part of Gurux Device Framework.
+//
+// Gurux Device Framework is Open Source software; you can redistribute it
+// and/or modify it under the terms of the GNU General Public License
+// as published by the Free Software Foundation; version 2 of the License.
+// Gurux Device Framework is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+// See the GNU General Public License for more details.
+//
+// More information of Gurux products: http://www.gurux.org
+//
+// This code is licensed under the GNU General Public License v2.
+// Full text may be retrieved at http://www.gnu.org/licenses/gpl-2.0.txt
+//---------------------------------------------------------------------------
+
+package gurux.common;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Listener that receives frames when all received frames are read at once.
+ *
+ * @author Gurux Ltd.
+ * @see GXSynchronousMediaBase#receiveAll(ReceiveParameters, IGXFrameListener)
+ */
+public interface IGXFrameListener {
+    /**
+     * Handle received frame. Frame is a read-only view to the receive buffer
+     * and it's valid only during this call. Received data is locked while
+     * the frame is handled, so the frame should be handled without blocking.
+     *
+     * @param frame
+     *            Received frame between position and limit of the buffer.
+     */
+    void onFrame(ByteBuffer frame);
+}
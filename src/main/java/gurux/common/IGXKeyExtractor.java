@@ -0,0 +1,58 @@
+//
+// --------------------------------------------------------------------------
+//  Gurux Ltd
+//
+//
+//
+// Filename:        $HeadURL$
+//
+// Version:         $Revision$,
+//                  $Date$
+//                  $Author$
+//
+// Copyright (c) Gurux Ltd
+//
+//---------------------------------------------------------------------------
+//
+//  DESCRIPTION
+//
+// This file is a part of Gurux Device Framework.
+//
+// Gurux Device Framework is Open Source software; you can redistribute it
+// and/or modify it under the terms of the GNU General Public License
+// as published by the Free Software Foundation; version 2 of the License.
+// Gurux Device Framework is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+// See the GNU General Public License for more details.
+//
+// More information of Gurux products: http://www.gurux.org
+//
+// This code is licensed under the GNU General Public License v2.
+// Full text may be retrieved at http://www.gnu.org/licenses/gpl-2.0.txt
+//---------------------------------------------------------------------------
+
+package gurux.common;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Key extractor reads correlation key from the received frame. Key can be for
+ * example device address or invoke ID that is same in the request and the
+ * reply.
+ *
+ * @author Gurux Ltd.
+ * @see GXCorrelator
+ */
+public interface IGXKeyExtractor {
+    /**
+     * Get correlation key of the received frame. Frame is a read-only view to
+     * the receive buffer and it's valid only during this call. If exception is
+     * thrown, frame is handled as a frame without a key.
+     *
+     * @param frame
+     *            Received frame between position and limit of the buffer.
+     * @return Correlation key or null if frame doesn't have a key.
+     */
+    Object getKey(ByteBuffer frame);
+}
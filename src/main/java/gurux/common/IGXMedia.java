@@ -155,10 +155,17 @@ public interface IGXMedia {
     void setSettings(String value);
 
     /**
-     * Locking this property makes the connection synchronized and stops sending
-     * OnReceived events.
+     * Get object that makes the connection synchronized and stops sending
+     * OnReceived events. Returned object is a {@link GXSync} that must be
+     * closed when the synchronous mode ends:
      * 
-     * @return Locking object.
+     * <pre>
+     * try (GXSync sync = (GXSync) media.getSynchronous()) {
+     *     // Connection is synchronized.
+     * }
+     * </pre>
+     * 
+     * @return Synchronize object that is closed after use.
      */
     Object getSynchronous();
 
@@ -69,6 +69,11 @@ public interface IGXMedia2 extends IGXMedia {
     void setAsyncWaitTime(int value);
 
     /**
+     * Wait handle is returned as an object, so existing media components
+     * don't need to be changed. New media components should return a
+     * {@link WaitHandle}, so callers can wait for many media components using
+     * {@link WaitHandle#waitAny}.
+     * 
      * @return Wait handle for asynchronous messages. It's null if asynchronous
      *         messages is not used.
      */
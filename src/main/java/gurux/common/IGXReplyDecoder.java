@@ -0,0 +1,69 @@
+//
+// --------------------------------------------------------------------------
+//  Gurux Ltd
+//
+//
+//
+// Filename:        $HeadURL$
+//
+// Version:         $Revision$,
+//                  $Date$
+//                  $Author$
+//
+// Copyright (c) Gurux Ltd
+//
+//---------------------------------------------------------------------------
+//
+//  DESCRIPTION
+//
+// This file is a part of Gurux Device Framework.
+//
+// Gurux Device Framework is Open Source software; you can redistribute it
+// and/or modify it under the terms of the GNU General Public License
+// as published by the Free Software Foundation; version 2 of the License.
+// Gurux Device Framework is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+// See the GNU General Public License for more details.
+//
+// More information of Gurux products: http://www.gurux.org
+//
+// This code is licensed under the GNU General Public License v2.
+// Full text may be retrieved at http://www.gnu.org/licenses/gpl-2.0.txt
+//---------------------------------------------------------------------------
+
+package gurux.common;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Reply decoder converts received bytes to the reply object of the given
+ * reply type. Decoders are registered to {@link GXCodecRegistry} and the
+ * decoder of the reply type is searched only once for each receive
+ * parameters.
+ *
+ * @param <T>
+ *            Reply type.
+ * @author Gurux Ltd.
+ * @see GXCodecRegistry#registerDecoder
+ */
+public interface IGXReplyDecoder<T> {
+    /**
+     * Get amount of bytes the reply value takes.
+     *
+     * @return Size of the value in bytes, or 0 if all received bytes are
+     *         used.
+     */
+    int getSize();
+
+    /**
+     * Decode reply. Received bytes are between position and limit of the
+     * buffer. Buffer is a view to the receive buffer, so decoder is not
+     * allowed to keep it after the call.
+     *
+     * @param data
+     *            Received bytes.
+     * @return Reply value.
+     */
+    T decode(ByteBuffer data);
+}
@@ -0,0 +1,88 @@
+//
+// --------------------------------------------------------------------------
+//  Gurux Ltd
+// 
+//
+//
+// Filename:        $HeadURL$
+//
+// Version:         $Revision$,
+//                  $Date$
+//                  $Author$
+//
+// Copyright (c) Gurux Ltd
+//
+//---------------------------------------------------------------------------
+//
+//  DESCRIPTION
+//
+// This file is a part of Gurux Device Framework.
+//
+// Gurux Device Framework is Open Source software; you can redistribute it
+// and/or modify it under the terms of the GNU General Public License 
+// as published by the Free Software Foundation; version 2 of the License.
+// Gurux Device Framework is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of 
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. 
+// See the GNU General Public License for more details.
+//
+// More information of Gurux products: http://www.gurux.org
+//
+// This code is licensed under the GNU General Public License v2. 
+// Full text may be retrieved at http://www.gnu.org/licenses/gpl-2.0.txt
+//---------------------------------------------------------------------------
+
+package gurux.common;
+
+/**
+ * Manual reset event releases all waiting threads when it's set. Event stays
+ * set until it's reset.
+ * 
+ * @author Gurux Ltd.
+ */
+public class ManualResetEvent extends WaitHandle {
+    /**
+     * Is event set.
+     */
+    private volatile boolean open;
+
+    /**
+     * Constructor.
+     * 
+     * @param value
+     *              Is current state set.
+     */
+    public ManualResetEvent(final boolean value) {
+        open = value;
+    }
+
+    @Override
+    public final boolean isSet() {
+        return open;
+    }
+
+    @Override
+    final boolean tryAcquire() {
+        return open;
+    }
+
+    @Override
+    final void undoAcquire() {
+        // Event is not changed when it's taken.
+    }
+
+    /**
+     * Set event. All waiting threads are released.
+     */
+    public final void set() {
+        open = true;
+        wakeUp(true);
+    }
+
+    /**
+     * Reset event.
+     */
+    public final void reset() {
+        open = false;
+    }
+}
@@ -35,6 +35,8 @@
 package gurux.common;
 
 import java.lang.reflect.Type;
+import java.nio.charset.Charset;
+import java.util.Arrays;
 
 /**
  * ReceiveArgs class is used when data is read synchronously.
@@ -74,9 +76,50 @@ public class ReceiveParameters<T> {
      * Reply type.
      */
     private Type replyType;
+    /**
+     * Leased reply data.
+     */
+    private GXReceiveLease lease;
+    /**
+     * Compiled end of packet.
+     */
+    private GXEopMatcher eopMatcher;
+    /**
+     * Received bytes when reply is appended.
+     */
+    private byte[] replyBytes;
+    /**
+     * Amount of received bytes in reply bytes.
+     */
+    private int replySize;
+    /**
+     * Received text when reply is appended.
+     */
+    private StringBuilder replyText;
+    /**
+     * Is reply appended after reply was created.
+     */
+    private boolean replyChanged;
+    /**
+     * Character set of the string reply.
+     */
+    private Charset charset;
+    /**
+     * Decoder of the string reply.
+     */
+    private GXTextDecoder textDecoder;
+    /**
+     * Decoder of the reply type.
+     */
+    private IGXReplyDecoder<? extends T> decoder;
 
     /**
      * Constructor.
+     * <p>
+     * If reply type is {@link java.nio.ByteBuffer}, received data is not
+     * copied. Reply is a read-only view to the receive buffer and it must be
+     * released using {@link #getLease()} after the data is handled.
+     * </p>
      * 
      * @param type
      *             Reply type.
@@ -126,6 +169,7 @@ public class ReceiveParameters<T> {
      */
     public final void setEop(final Object value) {
         eop = value;
+        eopMatcher = null;
     }
 
     /**
@@ -193,10 +237,23 @@ public class ReceiveParameters<T> {
 
     /**
      * Get received reply data.
+     * <p>
+     * When data is received several times, received data is appended to the
+     * internal buffer and the reply is created only when it's asked.
+     * </p>
      * 
      * @return Received data.
      */
+    @SuppressWarnings("unchecked")
     public final T getReply() {
+        if (replyChanged) {
+            replyChanged = false;
+            if (replyText != null) {
+                reply = (T) replyText.toString();
+            } else {
+                reply = (T) Arrays.copyOf(replyBytes, replySize);
+            }
+        }
         return reply;
     }
 
@@ -208,7 +265,125 @@ public class ReceiveParameters<T> {
      */
     @SuppressWarnings("unchecked")
     public final void setReply(final Object value) {
+        resetReply(value);
+        if (textDecoder != null) {
+            textDecoder.reset();
+        }
+    }
+
+    /**
+     * Reset reply.
+     * 
+     * @param value
+     *              Received data.
+     */
+    @SuppressWarnings("unchecked")
+    private void resetReply(final Object value) {
         reply = (T) value;
+        replyBytes = null;
+        replySize = 0;
+        replyText = null;
+        replyChanged = false;
+    }
+
+    /**
+     * Append received data to the reply. Data is appended to the growing
+     * buffer, so appending is not copying the old reply again.
+     * 
+     * @param value
+     *              Received data.
+     */
+    final void appendReply(final Object value) {
+        if (reply == null && !replyChanged) {
+            resetReply(value);
+        } else if (value != null) {
+            if (value instanceof String && (replyText != null || reply instanceof String)) {
+                if (replyText == null) {
+                    replyText = new StringBuilder((String) reply);
+                }
+                replyText.append((String) value);
+            } else if (value instanceof byte[] && (replyBytes != null || reply instanceof byte[])) {
+                byte[] data = (byte[]) value;
+                if (replyBytes == null) {
+                    replyBytes = (byte[]) reply;
+                    replySize = replyBytes.length;
+                }
+                if (replySize + data.length > replyBytes.length) {
+                    replyBytes = Arrays.copyOf(replyBytes, Math.max(2 * replyBytes.length, replySize + data.length));
+                }
+                System.arraycopy(data, 0, replyBytes, replySize, data.length);
+                replySize += data.length;
+            } else {
+                throw new RuntimeException("Invalid reply type");
+            }
+            replyChanged = true;
+        }
+    }
+
+    /**
+     * Get character set of the string reply.
+     * 
+     * @return Character set or null if character set of the media is used.
+     */
+    public final Charset getCharset() {
+        return charset;
+    }
+
+    /**
+     * Set character set of the string reply.
+     * 
+     * @param value
+     *              Character set or null if character set of the media is
+     *              used.
+     */
+    public final void setCharset(final Charset value) {
+        charset = value;
+        textDecoder = null;
+    }
+
+    /**
+     * Get decoder of the string reply. Decoder is created only once, so
+     * bytes of a character that is split between two reads are decoded
+     * correctly.
+     * 
+     * @param mediaCharset
+     *                     Character set of the media.
+     * @return Text decoder.
+     */
+    final GXTextDecoder getTextDecoder(final Charset mediaCharset) {
+        Charset cs = charset;
+        if (cs == null) {
+            cs = mediaCharset;
+        }
+        if (textDecoder == null || !textDecoder.getCharset().equals(cs)) {
+            textDecoder = new GXTextDecoder(cs);
+        }
+        return textDecoder;
+    }
+
+    /**
+     * Get decoder that converts received bytes to the reply. Decoder is
+     * searched from the codec registry only once.
+     * 
+     * @return Reply decoder.
+     */
+    @SuppressWarnings("unchecked")
+    public final IGXReplyDecoder<? extends T> getDecoder() {
+        if (decoder == null) {
+            decoder = (IGXReplyDecoder<? extends T>) GXCodecRegistry.getDecoder(replyType);
+        }
+        return decoder;
+    }
+
+    /**
+     * Set decoder that converts received bytes to the reply.
+     * 
+     * @param value
+     *              Reply decoder or null if decoder is searched from the
+     *              codec registry.
+     */
+    public final void setDecoder(final IGXReplyDecoder<? extends T> value) {
+        decoder = value;
     }
 
     /**
@@ -219,4 +394,43 @@ public class ReceiveParameters<T> {
     public final Type getReplyType() {
         return replyType;
     }
+
+    /**
+     * Get leased reply data. Lease is used when reply type is
+     * {@link java.nio.ByteBuffer}.
+     * 
+     * @return Leased reply data or null if reply is not leased.
+     */
+    public final GXReceiveLease getLease() {
+        return lease;
+    }
+
+    /**
+     * Set leased reply data.
+     * 
+     * @param value
+     *              Leased reply data.
+     */
+    final void setLease(final GXReceiveLease value) {
+        lease = value;
+    }
+
+    /**
+     * Get compiled end of packet.
+     * 
+     * @return Compiled end of packet or null if it's not compiled yet.
+     */
+    final GXEopMatcher getEopMatcher() {
+        return eopMatcher;
+    }
+
+    /**
+     * Set compiled end of packet.
+     * 
+     * @param value
+     *              Compiled end of packet.
+     */
+    final void setEopMatcher(final GXEopMatcher value) {
+        eopMatcher = value;
+    }
 }
\ No newline at end of file
@@ -0,0 +1,407 @@
+//
+// --------------------------------------------------------------------------
+//  Gurux Ltd
+// 
+//
+//
+// Filename:        $HeadURL$
+//
+// Version:         $Revision$,
+//                  $Date$
+//                  $Author$
+//
+// Copyright (c) Gurux Ltd
+//
+//---------------------------------------------------------------------------
+//
+//  DESCRIPTION
+//
+// This file is a part of Gurux Device Framework.
+//
+// Gurux Device Framework is Open Source software; you can redistribute it
+// and/or modify it under the terms of the GNU General Public License 
+// as published by the Free Software Foundation; version 2 of the License.
+// Gurux Device Framework is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of 
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. 
+// See the GNU General Public License for more details.
+//
+// More information of Gurux products: http://www.gurux.org
+//
+// This code is licensed under the GNU General Public License v2. 
+// Full text may be retrieved at http://www.gnu.org/licenses/gpl-2.0.txt
+//---------------------------------------------------------------------------
+
+package gurux.common;
+
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Base class of the events that threads can wait for. One thread can wait
+ * for many handles at the same time using {@link #waitAny} or
+ * {@link #waitAll}. Waiting thread is registered to every handle and parked,
+ * so no helper thread is needed for each handle.
+ * <p>
+ * Wait time is counted from a deadline, so spurious wakeups don't extend
+ * the wait. Interrupt ends the wait and interrupt status of the thread is
+ * kept.
+ * </p>
+ * <p>
+ * If spin count is set, waiting thread spins before it's parked. Spin count
+ * is adapted: it grows when the handle is set while spinning and shrinks
+ * when it isn't.
+ * </p>
+ *
+ * @author Gurux Ltd.
+ * @see AutoResetEvent
+ * @see ManualResetEvent
+ * @see CountdownEvent
+ */
+public abstract class WaitHandle {
+    /**
+     * Returned from waitAny when wait time elapses.
+     */
+    public static final int WAIT_TIMEOUT = -1;
+
+    /**
+     * Parked threads in arrival order.
+     */
+    private final ConcurrentLinkedQueue<Thread> waiters = new ConcurrentLinkedQueue<Thread>();
+
+    /**
+     * This handle as an array, so waiting for one handle doesn't allocate.
+     */
+    private final WaitHandle[] self = { this };
+
+    /**
+     * Maximum spin count. Zero if waiting thread is parked at once.
+     */
+    private volatile int maxSpins;
+
+    /**
+     * Current adapted spin count.
+     */
+    private volatile int spins;
+
+    /**
+     * Constructor. Only wait handles of this package are allowed.
+     */
+    WaitHandle() {
+    }
+
+    /**
+     * Is handle set.
+     *
+     * @return True, if handle is set.
+     */
+    public abstract boolean isSet();
+
+    /**
+     * Take the handle if it's set. Auto reset event is reset when it's taken.
+     *
+     * @return True, if handle was set.
+     */
+    abstract boolean tryAcquire();
+
+    /**
+     * Return taken handle. This is called when waitAll can't take all the
+     * handles.
+     */
+    abstract void undoAcquire();
+
+    /**
+     * Get maximum spin count.
+     *
+     * @return Maximum spin count. Zero if waiting thread is parked at once.
+     */
+    public final int getSpinCount() {
+        return maxSpins;
+    }
+
+    /**
+     * Set maximum spin count. Spinning lowers the latency when the handle is
+     * set soon, but it uses processor time.
+     *
+     * @param value
+     *            Maximum spin count. Zero if waiting thread is parked at
+     *            once.
+     */
+    public final void setSpinCount(final int value) {
+        if (value < 0) {
+            throw new IllegalArgumentException("Invalid spin count.");
+        }
+        maxSpins = value;
+        spins = value;
+    }
+
+    /**
+     * Wait until handle is set.
+     *
+     * @return True when handle is set or false if waiting thread is
+     *         interrupted.
+     */
+    public final boolean waitOne() {
+        return await(self, false, false, 0) != WAIT_TIMEOUT;
+    }
+
+    /**
+     * Wait until handle is set.
+     *
+     * @param timeout
+     *            Wait time in mill seconds.
+     * @return True when handle is set or false if wait time elapsed or
+     *         waiting thread is interrupted.
+     */
+    public final boolean waitOne(final long timeout) {
+        return waitOne(timeout, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Wait until handle is set.
+     *
+     * @param timeout
+     *            Wait time.
+     * @param unit
+     *            Unit of the wait time.
+     * @return True when handle is set or false if wait time elapsed or
+     *         waiting thread is interrupted.
+     */
+    public final boolean waitOne(final long timeout, final TimeUnit unit) {
+        return await(self, false, true, unit.toNanos(timeout)) != WAIT_TIMEOUT;
+    }
+
+    /**
+     * Wait until any of the handles is set.
+     *
+     * @param handles
+     *            Waited handles.
+     * @return Index of the handle that was set or WAIT_TIMEOUT if waiting
+     *         thread is interrupted.
+     */
+    public static int waitAny(final WaitHandle[] handles) {
+        return await(handles, false, false, 0);
+    }
+
+    /**
+     * Wait until any of the handles is set. If many handles are set, the one
+     * with the smallest index is taken.
+     *
+     * @param handles
+     *            Waited handles.
+     * @param timeout
+     *            Wait time.
+     * @param unit
+     *            Unit of the wait time.
+     * @return Index of the handle that was set or WAIT_TIMEOUT if wait time
+     *         elapsed or waiting thread is interrupted.
+     */
+    public static int waitAny(final WaitHandle[] handles, final long timeout, final TimeUnit unit) {
+        return await(handles, false, true, unit.toNanos(timeout));
+    }
+
+    /**
+     * Wait until all the handles are set.
+     *
+     * @param handles
+     *            Waited handles.
+     * @return True when all handles are set or false if waiting thread is
+     *         interrupted.
+     */
+    public static boolean waitAll(final WaitHandle[] handles) {
+        return await(handles, true, false, 0) != WAIT_TIMEOUT;
+    }
+
+    /**
+     * Wait until all the handles are set. Handles are taken only when all of
+     * them are set.
+     *
+     * @param handles
+     *            Waited handles.
+     * @param timeout
+     *            Wait time.
+     * @param unit
+     *            Unit of the wait time.
+     * @return True when all handles are set or false if wait time elapsed or
+     *         waiting thread is interrupted.
+     */
+    public static boolean waitAll(final WaitHandle[] handles, final long timeout, final TimeUnit unit) {
+        return await(handles, true, true, unit.toNanos(timeout)) != WAIT_TIMEOUT;
+    }
+
+    /**
+     * Try to take the handles.
+     *
+     * @param handles
+     *            Waited handles.
+     * @param all
+     *            Are all handles needed.
+     * @return Index of the taken handle, 0 if all handles were taken or
+     *         WAIT_TIMEOUT if handles were not taken.
+     */
+    private static int tryAcquire(final WaitHandle[] handles, final boolean all) {
+        if (!all) {
+            for (int pos = 0; pos != handles.length; ++pos) {
+                if (handles[pos].tryAcquire()) {
+                    return pos;
+                }
+            }
+            return WAIT_TIMEOUT;
+        }
+        for (WaitHandle it : handles) {
+            if (!it.isSet()) {
+                return WAIT_TIMEOUT;
+            }
+        }
+        for (int pos = 0; pos != handles.length; ++pos) {
+            if (!handles[pos].tryAcquire()) {
+                // Another thread took the handle. Taken handles are returned.
+                while (pos != 0) {
+                    handles[--pos].undoAcquire();
+                }
+                return WAIT_TIMEOUT;
+            }
+        }
+        return 0;
+    }
+
+    /**
+     * Wait until handles are set.
+     *
+     * @param handles
+     *            Waited handles.
+     * @param all
+     *            Are all handles needed.
+     * @param timed
+     *            Is wait time used.
+     * @param nanos
+     *            Wait time in nanoseconds.
+     * @return Index of the taken handle, 0 if all handles were taken or
+     *         WAIT_TIMEOUT if handles were not taken.
+     */
+    private static int await(final WaitHandle[] handles, final boolean all, final boolean timed,
+            final long nanos) {
+        if (handles == null || handles.length == 0) {
+            throw new IllegalArgumentException("Invalid wait handles.");
+        }
+        int ret = tryAcquire(handles, all);
+        if (ret != WAIT_TIMEOUT) {
+            return ret;
+        }
+        Thread current = Thread.currentThread();
+        if (current.isInterrupted() || (timed && nanos <= 0)) {
+            return WAIT_TIMEOUT;
+        }
+        final long deadline = System.nanoTime() + nanos;
+        if (handles.length == 1) {
+            ret = handles[0].spin();
+            if (ret != WAIT_TIMEOUT) {
+                return ret;
+            }
+        }
+        for (WaitHandle it : handles) {
+            it.waiters.add(current);
+        }
+        try {
+            while (true) {
+                ret = tryAcquire(handles, all);
+                if (ret != WAIT_TIMEOUT) {
+                    break;
+                }
+                if (all && handles.length != 1) {
+                    // Set handles are not taken before all handles are set,
+                    // so wake up is passed to the next waiter.
+                    for (WaitHandle it : handles) {
+                        if (it.isSet()) {
+                            it.wakeNext(current);
+                        }
+                    }
+                }
+                if (timed) {
+                    long remaining = deadline - System.nanoTime();
+                    if (remaining <= 0) {
+                        break;
+                    }
+                    LockSupport.parkNanos(handles, remaining);
+                } else {
+                    LockSupport.park(handles);
+                }
+                // Interrupt status is not cleared, so the caller sees it.
+                if (current.isInterrupted()) {
+                    break;
+                }
+            }
+        } finally {
+            for (WaitHandle it : handles) {
+                it.waiters.remove(current);
+            }
+        }
+        for (WaitHandle it : handles) {
+            if (it.isSet()) {
+                // Wake up was meant for this thread, so next waiter is woken.
+                it.wakeUp(false);
+            }
+        }
+        return ret;
+    }
+
+    /**
+     * Spin until handle is set.
+     *
+     * @return Zero if handle was taken or WAIT_TIMEOUT if it was not.
+     */
+    private int spin() {
+        int count = spins;
+        if (count != 0) {
+            for (int pos = 0; pos != count; ++pos) {
+                if (tryAcquire()) {
+                    // Handle was set while spinning. Spin longer next time.
+                    spins = Math.min(maxSpins, 2 * count);
+                    return 0;
+                }
+            }
+            spins = count / 2;
+        } else if (maxSpins != 0) {
+            // Spinning is tried again.
+            spins = 1;
+        }
+        return WAIT_TIMEOUT;
+    }
+
+    /**
+     * Wake up the waiter that is queued after the given thread.
+     *
+     * @param current
+     *            Thread that passes the wake up.
+     */
+    private void wakeNext(final Thread current) {
+        boolean found = false;
+        for (Thread it : waiters) {
+            if (found) {
+                LockSupport.unpark(it);
+                break;
+            }
+            found = it == current;
+        }
+    }
+
+    /**
+     * Wake up waiting threads.
+     *
+     * @param all
+     *            Are all waiting threads woken or only the first one.
+     */
+    final void wakeUp(final boolean all) {
+        if (all) {
+            for (Thread it : waiters) {
+                LockSupport.unpark(it);
+            }
+        } else {
+            Thread it = waiters.peek();
+            if (it != null) {
+                LockSupport.unpark(it);
+            }
+        }
+    }
+}
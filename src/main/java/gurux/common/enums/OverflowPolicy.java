@@ -0,0 +1,63 @@
+//
+// --------------------------------------------------------------------------
+//  Gurux Ltd
+// 
+//
+//
+// Filename:        $HeadURL$
+//
+// Version:         $Revision$,
+//                  $Date$
+//                  $Author$
+//
+// Copyright (c) Gurux Ltd
+//
+//---------------------------------------------------------------------------
+//
+//  DESCRIPTION
+//
+// This file is a part of Gurux Device Framework.
+//
+// Gurux Device Framework is Open Source software; you can redistribute it
+// and/or modify it under the terms of the GNU General Public License 
+// as published by the Free Software Foundation; version 2 of the License.
+// Gurux Device Framework is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of 
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. 
+// See the GNU General Public License for more details.
+//
+// More information of Gurux products: http://www.gurux.org
+//
+// This code is licensed under the GNU General Public License v2. 
+// Full text may be retrieved at http://www.gnu.org/licenses/gpl-2.0.txt
+//---------------------------------------------------------------------------
+
+package gurux.common.enums;
+
+/**
+ * Lists what is done when received data doesn't fit to the bounded receive
+ * buffer.
+ * 
+ * @author Gurux Ltd.
+ */
+public enum OverflowPolicy {
+    /**
+     * Appending thread waits until the receiver has read enough data.
+     */
+    BLOCK,
+
+    /**
+     * Oldest unread bytes are removed.
+     */
+    DROP_OLDEST,
+
+    /**
+     * New bytes that don't fit to the buffer are removed.
+     */
+    DROP_NEWEST,
+
+    /**
+     * New bytes are removed and the receiver fails with an exception.
+     */
+    ERROR;
+}
@@ -256,6 +256,27 @@ public final class NativeCode {
         public static native byte[] read(long hComPort, int readTimeout,
                         long closing);
 
+        /**
+         * Read data from serial port straight to the direct buffer. Bytes are
+         * written starting from the position of the buffer and at most
+         * remaining bytes are read. Position of the buffer is not moved.
+         *
+         * @param hComPort
+         *                 Handle to the serial port.
+         * @param dst
+         *                 Direct buffer where data is read.
+         * @param timeout
+         *                 How long data read can take.
+         * @param closing
+         *                 Handle to the event that is used when connection to the
+         *                 serial
+         *                 port is closed.
+         * @return Amount of read bytes.
+         * @see gurux.common.GXSynchronousMediaBase#appendData(java.nio.ByteBuffer)
+         */
+        public static native int readDirect(long hComPort, java.nio.ByteBuffer dst,
+                        int timeout, long closing);
+
         /**
          * Write data to the serial port.
          * 